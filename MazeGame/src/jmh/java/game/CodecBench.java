@@ -0,0 +1,57 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each MazeCodec on the tile bytes of a whole maze. MazeCodecBenchmark in
+ * the tests prints the sizes they get too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBench {
+    @Param({ "RAW", "RLE", "DEFLATE" })
+    public MazeCodec codec;
+
+    @Param({ "101", "1001" })
+    public int size;
+
+    private byte[] tiles;
+    private byte[] encoded;
+    private byte[] decoded;
+
+    @Setup
+    public void setup() {
+        Maze maze = new Maze(size, size, size);
+        tiles = Protocol.encodeMazeTiles(maze.getGrid(), maze.placeCheeseRandomly());
+        encoded = codec.encode(tiles, 0, tiles.length);
+        decoded = new byte[tiles.length];
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(tiles, 0, tiles.length);
+    }
+
+    @Benchmark
+    public byte[] decode() throws IOException {
+        codec.decode(encoded, decoded);
+        return decoded;
+    }
+}
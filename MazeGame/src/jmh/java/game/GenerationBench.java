@@ -0,0 +1,47 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to carve one maze with each MazeGenerator. Every call uses the next
+ * seed, so the numbers are not for one lucky maze.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBench {
+    @Param({ "dfs", "kruskal", "wilson", "eller" })
+    public String engine;
+
+    @Param({ "21", "101", "501" })
+    public int size;
+
+    private MazeGenerator generator;
+    private long seed = 0;
+
+    @Setup
+    public void setup() {
+        generator = MazeGenerator.forName(engine);
+    }
+
+    @Benchmark
+    public MazeGrid generate() {
+        return generator.generate(size, size, new SplittableRandom(seed++));
+    }
+}
@@ -0,0 +1,43 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The original MazeBuilder against GridMazeBuilder, which replaced it for
+ * the "dfs" engine. MazeBuilder is only run up to 501x501 like in
+ * MazeBuilderBenchmark, past that it takes too long.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MazeBuilderBench {
+    @Param({ "21", "101", "501" })
+    public int size;
+
+    private long seed = 0;
+
+    @Benchmark
+    public Object mazeBuilder() {
+        return new MazeBuilder(size, size, new SplittableRandom(seed++)).getMaze();
+    }
+
+    @Benchmark
+    public Object gridMazeBuilder() {
+        return GridMazeBuilder.build(size, size, new SplittableRandom(seed++));
+    }
+}
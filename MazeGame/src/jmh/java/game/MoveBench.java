@@ -0,0 +1,63 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The checks the server's MatchRoom.validatePlayerMove makes, on the 20x20
+ * board, for a move that is allowed (player 0 stepping between its corner
+ * and the open cell next to it) and one into the border. The lock and the
+ * broadcast around them are left out, MatchRoom needs connected clients.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBench {
+    private Maze maze;
+    private boolean away = false;
+
+    @Setup
+    public void setup() {
+        maze = new Maze(1);
+        maze.placeCheeseRandomly();
+    }
+
+    @Benchmark
+    public char validMove() {
+        away = !away;
+        return validate(1, away ? 2 : 1);
+    }
+
+    @Benchmark
+    public char moveIntoWall() {
+        return validate(0, 1);
+    }
+
+    // Same order of checks as validatePlayerMove, minus the cheese count
+    private char validate(int row, int col) {
+        if (!maze.getGrid().inBounds(row, col)) {
+            return 'i';
+        }
+        if (row == maze.getCheese().getRow() && col == maze.getCheese().getCol()) {
+            return 'c';
+        }
+        if (!maze.getGrid().isPassable(row, col) || maze.checkForPlayer(0, row, col)) {
+            return 'i';
+        }
+        maze.movePlayer(0, row, col);
+        return 'v';
+    }
+}
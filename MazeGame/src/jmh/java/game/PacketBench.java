@@ -0,0 +1,61 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the packets sent for every move: the bit packed 4 byte version 1
+ * MOVE and CHEESE and their varint version 2 forms.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBench {
+    private final byte[] packet = new byte[Protocol.MAX_PACKET_SIZE];
+    private int row = 1;
+    private int col = 1;
+
+    @Benchmark
+    public byte[] v1Move() {
+        next();
+        Protocol.encodeV1Move(packet, 2, row, col);
+        return packet;
+    }
+
+    @Benchmark
+    public byte[] v1Cheese() {
+        next();
+        Protocol.encodeV1Cheese(packet, 2, row, col, col, row);
+        return packet;
+    }
+
+    @Benchmark
+    public int v2Move() {
+        next();
+        return Protocol.encodeMove(packet, 2, row, col);
+    }
+
+    @Benchmark
+    public int v2Cheese() {
+        next();
+        return Protocol.encodeCheese(packet, 2, row, col, col, row);
+    }
+
+    // Walks over the 20x20 board so the coordinates are not constants
+    private void next() {
+        col = col == 18 ? 1 : col + 1;
+        row = col == 1 ? (row == 18 ? 1 : row + 1) : row;
+    }
+}
@@ -0,0 +1,61 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packing a maze into tile bytes the way the server does when it prepares a
+ * maze, and unpacking them the way the Client does when the chunks arrive,
+ * including the all-wall Maze it unpacks into. Also the checksum both sides
+ * take for MAZE_SEED.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileBench {
+    @Param({ "21", "101", "501" })
+    public int size;
+
+    private MazeGrid grid;
+    private int[] cheeseCoords;
+    private byte[] tiles;
+
+    @Setup
+    public void setup() {
+        Maze maze = new Maze(size, size, size);
+        grid = maze.getGrid();
+        cheeseCoords = maze.placeCheeseRandomly();
+        tiles = Protocol.encodeMazeTiles(grid, cheeseCoords);
+    }
+
+    @Benchmark
+    public byte[] encodeTiles() {
+        return Protocol.encodeMazeTiles(grid, cheeseCoords);
+    }
+
+    @Benchmark
+    public Maze decodeTiles() {
+        Maze maze = new Maze(true, size, size);
+        Client.decodeTiles(maze, tiles, 0, size * size - 1);
+        return maze;
+    }
+
+    @Benchmark
+    public int checksum() {
+        return Protocol.mazeChecksum(tiles);
+    }
+}
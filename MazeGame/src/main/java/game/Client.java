@@ -2,11 +2,15 @@ package game;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class Client {
-    private static final int SERVER_PORT = 42042; // Random number, can be changed if needed
+    // Random number, can be changed if needed. Both can be set with -Dmaze.server.host and -Dmaze.server.port
+    private static final int SERVER_PORT = Integer.getInteger("maze.server.port", 42042);
     private static final String VALID_AUTH = "me key mause"; // just an arbitrary string
-    private static final String SERVER_IP = "44.252.10.0"; // AWS VPS IP
+    private static final String SERVER_IP = System.getProperty("maze.server.host", "44.252.10.0"); // AWS VPS IP
 
     private static Socket socket;
     private static OutputStream os;
@@ -15,15 +19,19 @@ public class Client {
     private Thread receiveThread;
     private volatile boolean isConnected = false;
 
-    private static final int MAZE_SIDE = 20;
-    private static final int sendMovePacketSize = 3;
-    private static final int receiveMazePacketSize = MAZE_SIDE * MAZE_SIDE * 4 / 8;
-    private static final int receiveOtherPacketSize = 4;
+    private static final byte[] PONG_PACKET = { Protocol.PONG };
+    private static final byte[] MAZE_REQUEST_PACKET = { Protocol.MAZE_REQUEST };
     private static int userId = -1;
-
-    private static final int MAZE_SIZE = MAZE_SIDE * MAZE_SIDE;
+    // Filled in by MAZE_CHUNK packets after START
+    private static Maze maze;
+    // Picked by the server from the codecs we offered
+    private static MazeCodec mazeCodec = MazeCodec.RAW;
+    // Set by the first REVEAL: from then on the server decides what we can see
+    private static boolean inFog = false;
 
     private ClientEventListener listener;
+    // Moves we have made locally that the server has not acknowledged yet
+    private PendingMoves pendingMoves = new PendingMoves();
 
     public void setClientEventListener(ClientEventListener listener) {
         this.listener = listener;
@@ -41,6 +49,12 @@ public class Client {
         }
     }
 
+    private void notifyUIMazeChunk(int firstRow, int lastRow) {
+        if (listener != null) {
+            listener.onMazeChunk(firstRow, lastRow);
+        }
+    }
+
     private void notifyUIWin(int playerID) {
         if (listener != null) {
             listener.onPlayerWin(playerID);
@@ -48,13 +62,10 @@ public class Client {
     }
 
     private byte[] buildPacket(int row, int col) {
-        byte[] packet = new byte[sendMovePacketSize];
-        byte moveToken = 0b010; // bit encoding for token "MOVE"
-
-        // Assuming row and col will be 5b each => maze is 20x20
-        packet[0] = (byte) (((moveToken << 5) & 0b11100000) | ((userId << 3) & 0b00011000) | ((row >> 2) & 0b00000111));
-        packet[1] = (byte) (((row << 6) & 0b11000000) | ((col << 1) & 0b00111110));
-        return packet;
+        // The server knows who we are, so only a sequence number and the coordinates are sent
+        byte[] packet = new byte[1 + 3 * Protocol.MAX_VARINT_BYTES];
+        int length = Protocol.encodeMoveRequest(packet, pendingMoves.add(row, col), row, col);
+        return Arrays.copyOf(packet, length);
     }
 
     public void sendInputToServer(int newRow, int newCol) {
@@ -62,59 +73,149 @@ public class Client {
         byte[] packet = buildPacket(newRow, newCol);
 
         try {
-            os.write(packet);
-            os.flush();
+            writeToServer(packet);
         } catch (IOException moveException) {
             System.out.println("Error sending movement message to server\n");
             moveException.printStackTrace();
         }
     }
 
-    private boolean processOtherServerPacket(byte[] input) {
-        int token = (input[0] >> 5) & 0b00000111;
+    // Moves are sent from the UI thread and pongs from the receive thread
+    private static void writeToServer(byte[] packet) throws IOException {
+        synchronized (os) {
+            os.write(packet);
+            os.flush();
+        }
+    }
+
+    // Reads the fields that follow a token and acts on them
+    private boolean processOtherServerPacket(int token) throws IOException {
         switch (token) {
-            case 0b001: {
-                // Start: Display maze
-                break;
-            }
-            case 0b010: {
+            case Protocol.MOVE: {
                 // Move:
-                int playerID = ((input[0] >> 3) & 0b00000011);
-                int newRow = ((input[0] & 0b00000111) << 2) | ((input[1] >> 6) & 0b00000011);
-                int newCol = ((input[1] >> 1) & 0b00011111);
+                int playerID = Protocol.readVarInt(is);
+                int newRow = Protocol.readVarInt(is);
+                int newCol = Protocol.readVarInt(is);
                 System.out.println("Client: Received move packet for player " + playerID);
                 notifyUIMove(playerID, newRow, newCol);
                 break;
             }
-            case 0b011: {
+            case Protocol.CHEESE: {
                 // A player collected the cheese
-                int playerID = ((input[0] >> 3) & 0b00000011);
-                int newPlayerRow = ((input[0] & 0b00000111) << 2) | ((input[1] >> 6) & 0b00000011);
-                int newPlayerCol = ((input[1] >> 1) & 0b00011111);
-                int newCheeseRow = ((input[1] & 0b00000001) << 4) | ((input[2] >> 4) & 0b00001111);
-                int newCheeseCol = ((input[2] & 0b00001111) << 1) | ((input[3] >> 7) & 0b00000001);
+                int playerID = Protocol.readVarInt(is);
+                int newPlayerRow = Protocol.readVarInt(is);
+                int newPlayerCol = Protocol.readVarInt(is);
+                int newCheeseRow = Protocol.readVarInt(is);
+                int newCheeseCol = Protocol.readVarInt(is);
                 System.out.println("Client: Received new Cheese at " + newCheeseRow + ", " + newCheeseCol);
-                notifyUIMove(playerID, newPlayerRow, newPlayerCol);
+                // Where we are comes from the ACK that follows
+                if (playerID != userId) {
+                    notifyUIMove(playerID, newPlayerRow, newPlayerCol);
+                }
                 notifyUICheese(newCheeseRow, newCheeseCol);
-
-                // moveUserFromID(playerID, newPlayerRow, newPlayerCol); CHECK IF ID = USER &&
-                // THEY HAVEN'T MOVED => server accepts their move
-                // updateVisibilityAroundPlayer();
-                // placeNewCheese(newCheeseRow, newCheeseCol);
                 break;
             }
-            case 0b100: {
+            case Protocol.MAZE_CHUNK: {
+                // Part of the maze, decoded into the board as soon as it lands
+                int offset = Protocol.readVarInt(is);
+                int length = Protocol.readVarInt(is);
+                int encodedLength = Protocol.readVarInt(is);
+                byte[] encoded = is.readNBytes(encodedLength);
+                if (encoded.length < encodedLength) {
+                    throw new EOFException("Stream closed in the middle of a maze chunk");
+                }
+                byte[] tiles = new byte[length];
+                mazeCodec.decode(encoded, tiles);
+                int cols = maze.getGrid().getCols();
+                int firstTile = 2 * offset;
+                int lastTile = Math.min(2 * (offset + length), maze.getGrid().getRows() * cols) - 1;
+                decodeTiles(maze, tiles, firstTile, lastTile);
+                notifyUIMazeChunk(firstTile / cols, lastTile / cols);
+                break;
+            }
+            case Protocol.MAZE_SEED: {
+                // The server only sent how it built the maze, build the same one here
+                int generatorId = Protocol.readVarInt(is);
+                ByteBuffer seedAndChecksum = ByteBuffer.wrap(is.readNBytes(Long.BYTES + Integer.BYTES));
+                if (seedAndChecksum.remaining() < Long.BYTES + Integer.BYTES) {
+                    throw new EOFException("Stream closed in the middle of a maze seed");
+                }
+                long seed = seedAndChecksum.getLong();
+                int checksum = seedAndChecksum.getInt();
+                MazeGrid grid = maze.getGrid();
+                byte[] tiles = rebuildMaze(generatorId, seed, grid.getRows(), grid.getCols());
+                if (tiles != null && Protocol.mazeChecksum(tiles) == checksum) {
+                    System.out.println("Client: Rebuilt maze from seed " + seed);
+                    decodeTiles(maze, tiles, 0, grid.getRows() * grid.getCols() - 1);
+                    notifyUIMazeChunk(0, grid.getRows() - 1);
+                } else {
+                    // Not the maze the server has, ask for all of it
+                    System.out.println("Client: Maze from seed " + seed + " does not match, requesting full maze");
+                    writeToServer(MAZE_REQUEST_PACKET);
+                }
+                break;
+            }
+            case Protocol.REVEAL: {
+                // Cells that have just come out of the fog
+                MazeGrid grid = maze.getGrid();
+                int firstRow = grid.getRows();
+                int lastRow = -1;
+                if (!inFog) {
+                    inFog = true;
+                    maze.useServerVisibility();
+                    firstRow = 0;
+                    lastRow = grid.getRows() - 1;
+                }
+                int count = Protocol.readVarInt(is);
+                int cell = 0;
+                for (int i = 0; i < count; i++) {
+                    cell += Protocol.readVarInt(is);
+                    int tile = is.read();
+                    if (tile == -1) {
+                        throw new EOFException("Stream closed in the middle of a reveal");
+                    }
+                    int row = cell / grid.getCols();
+                    int col = cell % grid.getCols();
+                    applyTile(maze, row, col, (byte) tile);
+                    grid.setVisible(row, col);
+                    firstRow = Math.min(firstRow, row);
+                    lastRow = Math.max(lastRow, row);
+                }
+                if (lastRow >= 0) {
+                    notifyUIMazeChunk(firstRow, lastRow);
+                }
+                break;
+            }
+            case Protocol.ACK: {
+                // The server has processed our moves up to seq, replay the ones after it
+                int seq = Protocol.readVarInt(is);
+                int row = Protocol.readVarInt(is);
+                int col = Protocol.readVarInt(is);
+                int[] position = pendingMoves.acknowledge(seq, row, col, maze, userId);
+                Player user = maze.getPlayers()[userId];
+                if (user.getRow() != position[0] || user.getCol() != position[1]) {
+                    System.out.println("Client: Corrected position to " + position[0] + ", " + position[1]);
+                    notifyUIMove(userId, position[0], position[1]);
+                }
+                break;
+            }
+            case Protocol.WIN: {
                 // A player won
-                int playerID = ((input[0] >> 3) & 0b00000011);
+                int playerID = Protocol.readVarInt(is);
                 notifyUIWin(playerID);
                 return false;
             }
-            case 0b111: {
-                // Ping packet, do nothing
+            case Protocol.PING: {
+                // Ping packet, answer with a pong so the server knows we are still here
+                try {
+                    writeToServer(PONG_PACKET);
+                } catch (IOException pongException) {
+                    System.out.println("Error answering server ping\n");
+                }
                 break;
             }
             default:
-                System.out.println("ISSUE WITH INTERPRETING OTHER PACKET FROM SERVER'S TOKEN\n");
+                throw new IOException("ISSUE WITH INTERPRETING OTHER PACKET FROM SERVER'S TOKEN: " + token);
         }
 
         return true;
@@ -123,25 +224,18 @@ public class Client {
     private Runnable serverReceive(Socket socket) {
         return () -> {
             try {
-                byte[] input = new byte[receiveOtherPacketSize];
-
                 while (isConnected && !Thread.currentThread().isInterrupted()) {
-                    int bytesRead = 0;
-
-                    while (bytesRead < receiveOtherPacketSize && isConnected) {
-                        int result = is.read(input, bytesRead, receiveOtherPacketSize - bytesRead);
-                        if (result == -1) {
-                            System.out.println("Server connection closed");
-                            isConnected = false;
-                            return;
-                        }
-                        bytesRead += result;
+                    int token = is.read();
+                    if (token == -1) {
+                        System.out.println("Server connection closed");
+                        isConnected = false;
+                        return;
                     }
 
                     System.out.println("Received packet from server");
 
                     if (isConnected) {
-                        boolean continueLoop = processOtherServerPacket(input);
+                        boolean continueLoop = processOtherServerPacket(token);
                         if (!continueLoop) {
                             isConnected = false;
                         }
@@ -164,125 +258,154 @@ public class Client {
         };
     }
 
-    private static void sendInitToServer() {
-        // Send auth to server proving
-        out.write(VALID_AUTH);
-        out.flush();
-        // Get back the player ID
+    private static void sendInitToServer() throws IOException {
+        // Ask for protocol v3, send auth to server proving, then the maze codecs we can decode
+        // and that we can rebuild a maze from its seed, play in the fog and number our moves
+        os.write(Protocol.LATEST);
+        os.write(VALID_AUTH.getBytes(StandardCharsets.US_ASCII));
+        os.write(MazeCodec.allMask() | Protocol.SEED_MAZES | Protocol.FOG | Protocol.SEQ_MOVES);
+        os.flush();
+        // The server answers with the version it will speak and the codec it picked
+        int version = is.read();
+        if (version != Protocol.V3) {
+            throw new IOException("Server does not speak protocol v3, answered " + version);
+        }
+        int codecId = is.read();
         try {
-            byte[] userid = new byte[1];
-            is.read(userid, 0, 1);
-            System.out.println("USER ID: " + userid[0] + "\n");
-            userId = userid[0];
-        } catch (IOException readingException) {
-            System.out.println("UNABLE TO GET PLAYER ID FROM SERVER\n");
-            return;
+            mazeCodec = MazeCodec.forId(codecId);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Server picked a maze codec we did not offer: " + codecId);
         }
+        System.out.println("Maze comes " + mazeCodec + " encoded");
     }
 
-    private static byte[] getMaze() throws IOException {
-        boolean waiting = true;
-
-        while (waiting) {
-            byte[] input = new byte[1];
-            is.read(input, 0, 1);
-            int token = (input[0] >> 4) & 0b1111;
-            if (token == 0b1111) {
-                // ping packet, ignore
-            } else {
-                waiting = false;
-            }
+    /**
+     * Waits for the START packet, answering pings from the server meanwhile,
+     * and builds an all wall maze of the size it gives. The player ID comes
+     * with it, the tiles come after it as MAZE_CHUNK packets.
+     */
+    private static Maze getMaze() throws IOException {
+        int token;
+        while ((token = is.read()) == Protocol.PING) {
+            writeToServer(PONG_PACKET);
+        }
+        if (token != Protocol.START) {
+            throw new IOException("Expected the maze from the server, got token " + token);
         }
 
-        System.out.println("Getting maze from server");
-        byte[] mazeDescription = new byte[receiveMazePacketSize];
-        int totalbytesRead = 0;
+        userId = Protocol.readVarInt(is);
+        System.out.println("USER ID: " + userId + "\n");
+        int rows = Protocol.readVarInt(is);
+        int cols = Protocol.readVarInt(is);
+        int numPlayers = Protocol.readVarInt(is);
+        int[][] positions = new int[numPlayers][2];
+        for (int i = 0; i < numPlayers; i++) {
+            positions[i][0] = Protocol.readVarInt(is);
+            positions[i][1] = Protocol.readVarInt(is);
+        }
 
-        while (totalbytesRead < mazeDescription.length) {
-            int bytesRead = 0;
-            try {
-                bytesRead = is.read(mazeDescription, totalbytesRead, mazeDescription.length - totalbytesRead);
-            } catch (IOException serverReadException) {
-                System.out.println("SERVER GET MAZE EXCEPTION\n");
-                serverReadException.printStackTrace();
-                return null;
-            }
-            if (bytesRead == -1) {
-                throw new IOException("Stream closed early\n");
+        System.out.println("Getting " + rows + "x" + cols + " maze from server");
+        maze = new Maze(true, rows, cols);
+        inFog = false;
+        // Everyone starts in the corners today, but the server says where
+        for (int i = 0; i < numPlayers && i < maze.getPlayers().length; i++) {
+            Player player = maze.getPlayers()[i];
+            if (player.getRow() != positions[i][0] || player.getCol() != positions[i][1]) {
+                maze.movePlayer(i, positions[i][0], positions[i][1]);
             }
-            totalbytesRead += bytesRead;
-            System.out.println("Bytes read this iteration: " + bytesRead + ", Total: " + totalbytesRead + "/"
-                    + mazeDescription.length);
         }
+        return maze;
+    }
 
-        return mazeDescription;
+    /**
+     * Builds the maze the server built from this seed, the same way
+     * PreparedMaze does, and packs it like the server would.
+     *
+     * @return The tile bytes, or null if the generator is unknown to this Client
+     */
+    private static byte[] rebuildMaze(int generatorId, long seed, int rows, int cols) {
+        MazeGenerator generator;
+        try {
+            generator = MazeGenerator.forId(generatorId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        Maze rebuilt = new Maze(seed, rows, cols, generator);
+        int[] cheeseCoords = rebuilt.placeCheeseRandomly();
+        return Protocol.encodeMazeTiles(rebuilt.getGrid(), cheeseCoords);
     }
 
-    private static Maze createMaze(byte[] mazeDescription) {
-        Maze maze = new Maze(true);
+    /**
+     * Sets the tiles from firstTile to lastTile (inclusive) from their 4 bit
+     * descriptions. tiles starts at the byte holding firstTile, so firstTile
+     * is always even. Package-private for the benchmarks.
+     */
+    static void decodeTiles(Maze maze, byte[] tiles, int firstTile, int lastTile) {
+        int cols = maze.getGrid().getCols();
         // For each tile
-        for (int i = 0; i < MAZE_SIZE; i++) {
+        for (int i = firstTile; i <= lastTile; i++) {
             byte tileDescription = 0;
+            int index = (i - firstTile) / 2;
             // Get the correct half of the byte
             if (i % 2 == 0) {
-                tileDescription = (byte) ((mazeDescription[i / 2] >> 4) & 0b00001111);
+                tileDescription = (byte) ((tiles[index] >> 4) & 0b00001111);
             } else {
-                tileDescription = (byte) (mazeDescription[i / 2] & 0b00001111);
+                tileDescription = (byte) (tiles[index] & 0b00001111);
             }
 
-            // Set current coords
-            int row = i / MAZE_SIDE;
-            int col = i % MAZE_SIDE;
+            applyTile(maze, i / cols, i % cols, tileDescription);
+        }
+    }
 
-            switch ((int) tileDescription) {
-                case 0b0000: {
-                    // Wall: Initially filled with all walls so do nothing
-                    break;
-                }
-                case 0b0001: {
-                    // Floor
-                    maze.getMaze()[row][col].passable = true;
-                    break;
-                }
-                case 0b0010: {
-                    // Floor with wall decoration 1
-                    maze.getMaze()[row][col].passable = true;
-                    break;
-                }
-                case 0b0011: {
-                    // Floor with wall decoration 2
-                    maze.getMaze()[row][col].passable = true;
-                    break;
-                }
-                case 0b0100: {
-                    // Floor with floor decoration 1
-                    maze.getMaze()[row][col].passable = true;
-                    break;
-                }
-                case 0b0101: {
-                    // Floor with floor decoration 2
-                    maze.getMaze()[row][col].passable = true;
-                    break;
-                }
-                case 0b0110: {
-                    // Cheese
-                    // TODO: Currently overriding decorations on this
-                    // tile
-                    // TODO: Verify the following line is supposed to be here
-                    maze.getMaze()[row][col].passable = true;
-                    maze.placeCheeseAt(row, col);
-                    break;
-                }
-                case 0b0111: // Player 1
-                case 0b1000: // Player 2
-                case 0b1001: // Player 3
-                case 0b1010:
-                    break; // Player 4
-                default:
-                    System.out.println("ERROR IN DECRYPTING SERVER'S PACKET\n");
+    // Sets one tile from its 4 bit description
+    private static void applyTile(Maze maze, int row, int col, byte tileDescription) {
+        switch ((int) tileDescription) {
+            case 0b0000: {
+                // Wall: Initially filled with all walls so do nothing
+                break;
+            }
+            case 0b0001: {
+                // Floor
+                maze.getGrid().setPassable(row, col, true);
+                break;
+            }
+            case 0b0010: {
+                // Floor with wall decoration 1
+                maze.getGrid().setPassable(row, col, true);
+                break;
+            }
+            case 0b0011: {
+                // Floor with wall decoration 2
+                maze.getGrid().setPassable(row, col, true);
+                break;
             }
+            case 0b0100: {
+                // Floor with floor decoration 1
+                maze.getGrid().setPassable(row, col, true);
+                break;
+            }
+            case 0b0101: {
+                // Floor with floor decoration 2
+                maze.getGrid().setPassable(row, col, true);
+                break;
+            }
+            case 0b0110: {
+                // Cheese
+                // TODO: Currently overriding decorations on this
+                // tile
+                // TODO: Verify the following line is supposed to be here
+                maze.getGrid().setPassable(row, col, true);
+                maze.placeCheeseAt(row, col);
+                break;
+            }
+            case 0b0111: // Player 1
+            case 0b1000: // Player 2
+            case 0b1001: // Player 3
+            case 0b1010:
+                break; // Player 4
+            default:
+                System.out.println("ERROR IN DECRYPTING SERVER'S PACKET\n");
         }
-        return maze;
     }
 
     private void closeConnections() throws IOException {
@@ -293,12 +416,14 @@ public class Client {
 
     public Maze setupConnection() throws IOException {
         socket = null;
+        pendingMoves = new PendingMoves();
         try {
             // Set up I/O streams
             socket = new Socket(SERVER_IP, SERVER_PORT);
             os = socket.getOutputStream();
             out = new PrintWriter(os, true);
-            is = socket.getInputStream();
+            // Packets are read a token and a varint at a time
+            is = new BufferedInputStream(socket.getInputStream());
             isConnected = true;
         } catch (IOException socketException) {
             System.out.println("Issue in connecting\n");
@@ -308,13 +433,11 @@ public class Client {
         }
 
         System.out.println("Connected to server.");
-        // Send setup msg
-        sendInitToServer();
-
-        // Get Maze (display waiting screen?)
-        byte[] mazeDescription = null;
+        // Send setup msg, then get Maze (display waiting screen?)
+        maze = null;
         try {
-            mazeDescription = getMaze();
+            sendInitToServer();
+            maze = getMaze();
         } catch (IOException serverGetMazeException) {
             System.out.println("Error with getting maze from server\n");
             serverGetMazeException.printStackTrace();
@@ -324,10 +447,9 @@ public class Client {
         }
 
         // Process Maze
-        Maze maze = createMaze(mazeDescription);
         maze.setUserId(userId);
-        System.out.println("Created maze from description from Server");
-        maze.printMaze();
+        System.out.println("Created " + maze.getGrid().getRows() + "x" + maze.getGrid().getCols()
+                + " maze from Server, tiles are still on their way");
 
         // Store reference to the thread so we can manage it
         receiveThread = new Thread(serverReceive(socket));
@@ -4,4 +4,6 @@ public interface ClientEventListener {
     void onMoveReceived(int playerID, int row, int col);
     void onCheeseReceived(int row, int col);
     void onPlayerWin(int playerID);
+    // Rows firstRow to lastRow (inclusive) of the maze have been received
+    void onMazeChunk(int firstRow, int lastRow);
 }
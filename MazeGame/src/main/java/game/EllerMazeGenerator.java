@@ -0,0 +1,253 @@
+package game;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Eller's algorithm: the maze is carved one lattice row at a time, keeping
+ * only which set each cell of the current row belongs to. Neighbours in
+ * different sets are randomly joined, then every set carries on downwards
+ * through at least one cell, and the last row joins whatever is left.
+ *
+ * Wall removal is done in a sliding window of three grid rows, so stream()
+ * hands out finished rows while using memory for a few rows only. That makes
+ * boards far taller than would fit in a MazeGrid possible.
+ */
+public final class EllerMazeGenerator {
+
+    /**
+     * Receives a finished maze one row at a time, from top to bottom.
+     */
+    @FunctionalInterface
+    public interface RowSink {
+        /**
+         * @param row      Row number
+         * @param passable Whether each cell of the row is open. Reused for a
+         *                 later row after the call returns, copy it to keep it
+         */
+        void acceptRow(int row, boolean[] passable);
+    }
+
+    private final int rows;
+    private final int cols;
+    private final RandomGenerator random;
+    // Lattice size: cell (i, j) of the lattice is grid cell (2i + 1, 2j + 1)
+    private final int height;
+    private final int width;
+
+    // Per lattice row state, set labels always stay below width
+    private final int[] set;
+    private final int[] parent;
+    private final boolean[] joinedRight;
+    private final boolean[] down;
+    private final int[] setCount;
+    private final int[] setCandidate;
+    private final boolean[] setHasDown;
+    private final int[] remap;
+
+    // Walls of the row being thinned out
+    private final int[] rowWalls;
+    private final long numOfWallsToRemove;
+
+    private EllerMazeGenerator(int rows, int cols, RandomGenerator random) {
+        this.rows = rows;
+        this.cols = cols;
+        this.random = random;
+        this.height = (rows - 1) / 2;
+        this.width = (cols - 1) / 2;
+        this.set = new int[width];
+        this.parent = new int[width];
+        this.joinedRight = new boolean[width];
+        this.down = new boolean[width];
+        this.setCount = new int[width];
+        this.setCandidate = new int[width];
+        this.setHasDown = new boolean[width];
+        this.remap = new int[width];
+        this.rowWalls = new int[cols];
+        this.numOfWallsToRemove = (long) ((rows - 2) * (double) (cols - 2) * GridMazeBuilder.WALL_REMOVAL_RATIO);
+        for (int j = 0; j < width; j++) {
+            set[j] = j;
+        }
+    }
+
+    public static MazeGrid build(int rows, int cols, RandomGenerator random) {
+        GridMazeBuilder.checkSize("EllerMazeGenerator", rows, cols);
+        MazeGrid grid = new MazeGrid(rows, cols);
+        stream(rows, cols, random, (row, passable) -> {
+            for (int col = 0; col < cols; col++) {
+                if (passable[col]) {
+                    grid.setPassable(row, col, true);
+                }
+            }
+        });
+        return grid;
+    }
+
+    /**
+     * Generates a maze and hands it to sink row by row, without ever holding
+     * more than three rows of it.
+     */
+    public static void stream(int rows, int cols, RandomGenerator random, RowSink sink) {
+        if (rows < GridMazeBuilder.MIN_SIDE || cols < GridMazeBuilder.MIN_SIDE) {
+            throw new IllegalArgumentException("EllerMazeGenerator was intended to create at least a "
+                    + GridMazeBuilder.MIN_SIDE + "x" + GridMazeBuilder.MIN_SIDE + " maze.");
+        }
+        new EllerMazeGenerator(rows, cols, random).run(sink);
+    }
+
+    private void run(RowSink sink) {
+        boolean[] prev = new boolean[cols];
+        boolean[] cur = new boolean[cols];
+        boolean[] next = new boolean[cols];
+        carveRow(0, cur);
+        carveRow(1, next);
+
+        for (int row = 0; row < rows; row++) {
+            if (row >= 1 && row <= rows - 2) {
+                randomlyRemoveWalls(row, prev, cur, next);
+            }
+            sink.acceptRow(row, cur);
+
+            boolean[] recycled = prev;
+            prev = cur;
+            cur = next;
+            next = recycled;
+            if (row + 2 < rows) {
+                carveRow(row + 2, next);
+            }
+        }
+    }
+
+    // Fills in grid row number row before any walls are removed. Rows must be asked for in order
+    private void carveRow(int row, boolean[] passable) {
+        Arrays.fill(passable, false);
+        int latticeRow = (row - 1) / 2;
+        if (row >= 1 && latticeRow < height) {
+            if (row % 2 == 1) {
+                joinAcross(latticeRow == height - 1);
+                for (int j = 0; j < width; j++) {
+                    passable[2 * j + 1] = true;
+                    if (joinedRight[j]) {
+                        passable[2 * j + 2] = true;
+                    }
+                }
+            } else if (latticeRow < height - 1) {
+                joinDownwards();
+                for (int j = 0; j < width; j++) {
+                    passable[2 * j + 1] = down[j];
+                }
+            }
+        }
+        // The four player starting spots
+        if (row == 1 || row == rows - 2) {
+            passable[1] = true;
+            passable[cols - 2] = true;
+        }
+    }
+
+    // Randomly joins neighbours in different sets, or all of them on the last row
+    private void joinAcross(boolean lastRow) {
+        for (int j = 0; j < width; j++) {
+            parent[j] = j;
+        }
+        for (int j = 0; j < width - 1; j++) {
+            int a = find(set[j]);
+            int b = find(set[j + 1]);
+            joinedRight[j] = a != b && (lastRow || random.nextBoolean());
+            if (joinedRight[j]) {
+                parent[b] = a;
+            }
+        }
+        joinedRight[width - 1] = false;
+        for (int j = 0; j < width; j++) {
+            set[j] = find(set[j]);
+        }
+    }
+
+    /**
+     * Picks the cells that carry their set down to the next row, at least one
+     * per set, then relabels the next row so labels stay below width.
+     */
+    private void joinDownwards() {
+        for (int j = 0; j < width; j++) {
+            setCount[j] = 0;
+            setHasDown[j] = false;
+        }
+        for (int j = 0; j < width; j++) {
+            int label = set[j];
+            // Reservoir sampling, so a set that picked no cell still gets a random one
+            setCount[label]++;
+            if (random.nextInt(setCount[label]) == 0) {
+                setCandidate[label] = j;
+            }
+            down[j] = random.nextBoolean();
+            if (down[j]) {
+                setHasDown[label] = true;
+            }
+        }
+        for (int j = 0; j < width; j++) {
+            int label = set[j];
+            if (!setHasDown[label] && setCandidate[label] == j) {
+                down[j] = true;
+            }
+        }
+
+        for (int j = 0; j < width; j++) {
+            remap[j] = -1;
+        }
+        int nextLabel = 0;
+        for (int j = 0; j < width; j++) {
+            if (down[j]) {
+                int label = set[j];
+                if (remap[label] < 0) {
+                    remap[label] = nextLabel++;
+                }
+                set[j] = remap[label];
+            } else {
+                set[j] = -1;
+            }
+        }
+        for (int j = 0; j < width; j++) {
+            if (set[j] < 0) {
+                set[j] = nextLabel++;
+            }
+        }
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    /**
+     * Same rule as GridMazeBuilder.randomlyRemoveWalls(), with the 12% spread
+     * evenly over the rows. The row above is final and the row below has not
+     * had any walls removed yet, which is exactly what a row by row pass over
+     * the whole grid would see.
+     */
+    private void randomlyRemoveWalls(int row, boolean[] above, boolean[] passable, boolean[] below) {
+        long quota = numOfWallsToRemove * row / (rows - 2) - numOfWallsToRemove * (row - 1) / (rows - 2);
+
+        int numOfWalls = 0;
+        for (int col = 1; col < cols - 1; col++) {
+            if (!passable[col]) {
+                rowWalls[numOfWalls++] = col;
+            }
+        }
+
+        int wallsRemoved = 0;
+        for (int i = 0; i < numOfWalls && wallsRemoved < quota; i++) {
+            int pick = i + random.nextInt(numOfWalls - i);
+            int col = rowWalls[pick];
+            rowWalls[pick] = rowWalls[i];
+
+            if (GridMazeBuilder.isRemovable(!passable[col - 1], !passable[col + 1], !above[col], !below[col])) {
+                passable[col] = true;
+                wallsRemoved++;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package game;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A set of cell indices with O(1) add, remove and uniform random pick. The
+ * members are kept densely packed in cells[], and positions[] remembers where
+ * each cell sits in it so removal can swap the last member into the hole.
+ */
+public final class FreeCellSet {
+    private static final int ABSENT = -1;
+
+    private final int[] cells;
+    private final int[] positions;
+    private int size = 0;
+
+    /**
+     * @param capacity Number of cells on the board, indices go from 0 to capacity - 1
+     */
+    public FreeCellSet(int capacity) {
+        cells = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, ABSENT);
+    }
+
+    public boolean contains(int cell) {
+        return positions[cell] != ABSENT;
+    }
+
+    public void add(int cell) {
+        if (contains(cell)) {
+            return;
+        }
+        cells[size] = cell;
+        positions[cell] = size;
+        size++;
+    }
+
+    public void remove(int cell) {
+        int position = positions[cell];
+        if (position == ABSENT) {
+            return;
+        }
+        size--;
+        int last = cells[size];
+        cells[position] = last;
+        positions[last] = position;
+        positions[cell] = ABSENT;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Picks a member uniformly at random.
+     *
+     * @throws IllegalStateException If the set is empty
+     */
+    public int randomCell(SplittableRandom random) {
+        if (size == 0) {
+            throw new IllegalStateException("No free cells left");
+        }
+        return cells[random.nextInt(size)];
+    }
+}
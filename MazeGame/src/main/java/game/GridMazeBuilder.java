@@ -0,0 +1,173 @@
+package game;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Randomized depth first traversal, then 12% of the inner walls knocked out,
+ * like MazeBuilder, generated straight into a MazeGrid. It does not build the
+ * same mazes as MazeBuilder: the random numbers are drawn in a different
+ * order, and a wall is only knocked out if that cannot leave an open cell
+ * walled in, see isRemovable(), where MazeBuilder only asks for two parallel
+ * walls. Cells are linear indices, the visited set is a long[] bitset and the
+ * traversal stack is an int[], so there are no per-cell objects, no hashing
+ * and no boxing. All memory is allocated up front, which makes it usable for
+ * 1000x1000 mazes and larger.
+ *
+ * The other MazeGenerators carve the same lattice (open cells on odd rows and
+ * columns, joined through the cell between them) and share the corner and
+ * wall removal steps below, so they keep the same guarantees: no 2x2 block of
+ * open cells, no 2x2 block of walls inside the border, and every open cell
+ * reachable from every other.
+ */
+public final class GridMazeBuilder {
+    static final double WALL_REMOVAL_RATIO = 0.12;
+    static final int MIN_SIDE = 4;
+
+    private final int rows;
+    private final int cols;
+    private final RandomGenerator random;
+    private final MazeGrid grid;
+    private final long[] visited;
+
+    private GridMazeBuilder(int rows, int cols, RandomGenerator random) {
+        this.rows = rows;
+        this.cols = cols;
+        this.random = random;
+        this.grid = new MazeGrid(rows, cols);
+        this.visited = new long[(rows * cols + 63) >>> 6];
+    }
+
+    /**
+     * Generates a maze.
+     *
+     * @param rows   Number of rows, at least 4
+     * @param cols   Number of columns, at least 4
+     * @param random Random source, the same seed gives the same maze
+     * @return A grid with the walls set and nothing visible yet
+     */
+    public static MazeGrid build(int rows, int cols, RandomGenerator random) {
+        checkSize("GridMazeBuilder", rows, cols);
+        GridMazeBuilder builder = new GridMazeBuilder(rows, cols, random);
+        openCorners(builder.grid);
+        builder.randomizedDepthFirstTraversal();
+        randomlyRemoveWalls(builder.grid, random);
+        return builder.grid;
+    }
+
+    static void checkSize(String generator, int rows, int cols) {
+        if (rows < MIN_SIDE || cols < MIN_SIDE) {
+            throw new IllegalArgumentException(
+                    generator + " was intended to create at least a " + MIN_SIDE + "x" + MIN_SIDE + " maze.");
+        }
+        if ((long) rows * cols > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maze of " + rows + "x" + cols + " is too large");
+        }
+    }
+
+    // The four player starting spots
+    static void openCorners(MazeGrid grid) {
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        grid.setPassable(1, 1, true);
+        grid.setPassable(1, cols - 2, true);
+        grid.setPassable(rows - 2, cols - 2, true);
+        grid.setPassable(rows - 2, 1, true);
+    }
+
+    private void randomizedDepthFirstTraversal() {
+        // Only cells on odd rows and columns are ever pushed, which bounds the stack
+        int[] stack = new int[((rows - 1) / 2) * ((cols - 1) / 2) + 1];
+        int[] candidates = new int[4];
+        int top = 0;
+
+        // (1,1) is starting location of player
+        int start = cols + 1;
+        stack[top++] = start;
+        markVisited(start);
+
+        while (top > 0) {
+            int current = stack[--top];
+            int row = current / cols;
+            int col = current - row * cols;
+
+            int count = 0;
+            if (col + 2 <= cols - 2 && !isVisited(current + 2)) {
+                candidates[count++] = current + 2; // right
+            }
+            if (col - 2 >= 1 && !isVisited(current - 2)) {
+                candidates[count++] = current - 2; // left
+            }
+            if (row + 2 <= rows - 2 && !isVisited(current + 2 * cols)) {
+                candidates[count++] = current + 2 * cols; // down
+            }
+            if (row - 2 >= 1 && !isVisited(current - 2 * cols)) {
+                candidates[count++] = current - 2 * cols; // up
+            }
+            if (count == 0) {
+                continue;
+            }
+
+            int next = candidates[count == 1 ? 0 : random.nextInt(count)];
+            stack[top++] = current;
+
+            // Both cells are on the same row or column, so the wall between them is the midpoint
+            grid.openAt((current + next) >>> 1);
+            grid.openAt(next);
+
+            markVisited(next);
+            stack[top++] = next;
+        }
+    }
+
+    /**
+     * Removes walls that have parallel walls on both sides, so no 2x2 open
+     * square is made. Walls are drawn at random without replacement, using a
+     * Fisher-Yates shuffle that stops as soon as enough have been removed.
+     */
+    static void randomlyRemoveWalls(MazeGrid grid, RandomGenerator random) {
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        int numOfWallsToRemove = (int) ((rows - 2) * (long) (cols - 2) * WALL_REMOVAL_RATIO);
+
+        int[] walls = new int[(rows - 2) * (cols - 2)];
+        int numOfWalls = 0;
+        for (int row = 1; row < rows - 1; row++) {
+            for (int col = 1; col < cols - 1; col++) {
+                int cell = grid.index(row, col);
+                if (grid.isWallAt(cell)) {
+                    walls[numOfWalls++] = cell;
+                }
+            }
+        }
+
+        int wallsRemoved = 0;
+        for (int i = 0; i < numOfWalls && wallsRemoved < numOfWallsToRemove; i++) {
+            int pick = i + random.nextInt(numOfWalls - i);
+            int wall = walls[pick];
+            walls[pick] = walls[i];
+
+            if (isRemovable(grid.isWallAt(wall - 1), grid.isWallAt(wall + 1), grid.isWallAt(wall - cols),
+                    grid.isWallAt(wall + cols))) {
+                grid.openAt(wall);
+                wallsRemoved++;
+            }
+        }
+    }
+
+    /**
+     * A wall can go if it has parallel walls on two opposite sides, which
+     * keeps 2x2 open squares out, and an open cell on at least one of the
+     * other two, so it never becomes an open pocket nobody can reach.
+     */
+    static boolean isRemovable(boolean left, boolean right, boolean up, boolean down) {
+        return (left && right && !(up && down)) || (up && down && !(left && right));
+    }
+
+    private boolean isVisited(int cell) {
+        return (visited[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private void markVisited(int cell) {
+        visited[cell >>> 6] |= 1L << cell;
+    }
+}
@@ -0,0 +1,106 @@
+package game;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Randomized Kruskal: every wall between two lattice cells is a candidate
+ * edge, edges are drawn in random order and a wall is knocked down whenever
+ * it joins two cells that are not connected yet. Connectivity is tracked
+ * with a union-find over int arrays (path halving, union by size), so the
+ * whole run is a few int arrays and near linear time.
+ */
+public final class KruskalMazeGenerator {
+    private final MazeGrid grid;
+    private final RandomGenerator random;
+    // Lattice size: cell (i, j) of the lattice is grid cell (2i + 1, 2j + 1)
+    private final int height;
+    private final int width;
+    private final int[] parent;
+    private final int[] size;
+
+    private KruskalMazeGenerator(int rows, int cols, RandomGenerator random) {
+        this.grid = new MazeGrid(rows, cols);
+        this.random = random;
+        this.height = (rows - 1) / 2;
+        this.width = (cols - 1) / 2;
+        this.parent = new int[height * width];
+        this.size = new int[height * width];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    public static MazeGrid build(int rows, int cols, RandomGenerator random) {
+        GridMazeBuilder.checkSize("KruskalMazeGenerator", rows, cols);
+        KruskalMazeGenerator generator = new KruskalMazeGenerator(rows, cols, random);
+        GridMazeBuilder.openCorners(generator.grid);
+        generator.joinCells();
+        GridMazeBuilder.randomlyRemoveWalls(generator.grid, random);
+        return generator.grid;
+    }
+
+    private void joinCells() {
+        int cells = height * width;
+        for (int cell = 0; cell < cells; cell++) {
+            grid.openAt(toGridIndex(cell));
+        }
+
+        // Edge e is cell e / 2 to its right neighbour (even e) or the one below (odd e)
+        int[] edges = new int[2 * cells];
+        int numOfEdges = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (cell % width < width - 1) {
+                edges[numOfEdges++] = 2 * cell;
+            }
+            if (cell / width < height - 1) {
+                edges[numOfEdges++] = 2 * cell + 1;
+            }
+        }
+
+        // A spanning tree has cells - 1 edges, stop drawing once it is complete
+        int joined = 0;
+        for (int i = 0; i < numOfEdges && joined < cells - 1; i++) {
+            int pick = i + random.nextInt(numOfEdges - i);
+            int edge = edges[pick];
+            edges[pick] = edges[i];
+
+            int a = edge >>> 1;
+            int b = (edge & 1) == 0 ? a + 1 : a + width;
+            if (union(a, b)) {
+                // The wall sits halfway between the two cells
+                grid.openAt((toGridIndex(a) + toGridIndex(b)) >>> 1);
+                joined++;
+            }
+        }
+    }
+
+    private int toGridIndex(int cell) {
+        return grid.index(2 * (cell / width) + 1, 2 * (cell % width) + 1);
+    }
+
+    private int find(int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    // Joins the sets of a and b, false if they already were one set
+    private boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (size[rootA] < size[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+        return true;
+    }
+}
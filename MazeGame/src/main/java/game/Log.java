@@ -0,0 +1,149 @@
+package game;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Small asynchronous logger. Callers only put a line into a bounded ring
+ * buffer, and a background thread does the actual console writes in batches,
+ * so the game loop never waits on stdout. If the buffer is full the line is
+ * dropped and counted rather than blocking the caller.
+ *
+ * The level is set with -Dmaze.log.level=debug|info|warn|error (default info)
+ * and the buffer size with -Dmaze.log.buffer (default 4096 lines).
+ */
+public final class Log {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static volatile Level level = parseLevel(System.getProperty("maze.log.level", "info"));
+    private static final int BUFFER_SIZE = Math.max(16, Integer.getInteger("maze.log.buffer", 4096));
+
+    // ArrayBlockingQueue is a fixed array used as a ring, so logging never allocates a node
+    private static final BlockingQueue<Entry> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private static final AtomicLong dropped = new AtomicLong();
+
+    static {
+        Thread writer = new Thread(Log::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Give the writer a chance to empty the buffer when the program exits
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "log-flush"));
+    }
+
+    private record Entry(Level level, String message) {
+    }
+
+    private Log() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    public static boolean isEnabled(Level check) {
+        return check.compareTo(level) >= 0;
+    }
+
+    // The supplier is only called if debug is on, so hot paths pay nothing for building the message
+    public static void debug(Supplier<String> message) {
+        if (isDebugEnabled()) {
+            log(Level.DEBUG, message.get());
+        }
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void error(String message, Throwable cause) {
+        log(Level.ERROR, message + ": " + cause);
+    }
+
+    public static void log(Level lineLevel, String message) {
+        if (!isEnabled(lineLevel)) {
+            return;
+        }
+        if (!buffer.offer(new Entry(lineLevel, message))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public static Level parseLevel(String value) {
+        for (Level candidate : Level.values()) {
+            if (candidate.name().equalsIgnoreCase(value)) {
+                return candidate;
+            }
+        }
+        return Level.INFO;
+    }
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(buffer.take());
+                buffer.drainTo(batch);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void drain() {
+        List<Entry> batch = new ArrayList<>();
+        buffer.drainTo(batch);
+        write(batch);
+    }
+
+    // One print per stream per batch instead of one per line
+    private static void write(List<Entry> batch) {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        for (Entry entry : batch) {
+            StringBuilder target = entry.level().compareTo(Level.WARN) >= 0 ? err : out;
+            target.append(entry.message()).append('\n');
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            err.append("[log] ").append(lost).append(" lines dropped, buffer full\n");
+        }
+        print(System.out, out);
+        print(System.err, err);
+    }
+
+    private static void print(PrintStream stream, StringBuilder text) {
+        if (text.length() > 0) {
+            stream.print(text);
+            stream.flush();
+        }
+    }
+}
@@ -1,29 +1,66 @@
 package game;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class Maze {
-    final static int NUM_OF_COLUMNS = 20;
-    final static int NUM_OF_ROWS = 20;
+    // Board size used by the original protocol, which can only address 32 rows and columns
+    public final static int NUM_OF_COLUMNS = 20;
+    public final static int NUM_OF_ROWS = 20;
 
-    private MazeObject[][] maze;
+    private final int numOfRows;
+    private final int numOfColumns;
+
+    // One byte per cell, see MazeGrid
+    private MazeGrid grid;
     private Player[] players = new Player[4];
     private Cheese cheese;
 
+    // Everything random about this maze comes from the seed, so a match can be replayed
+    private final long seed;
+    private final SplittableRandom random;
+    // Passable cells with no player on them, built the first time a cheese is placed
+    private FreeCellSet freeCells;
+    // Set on a Client in the fog, where only the server reveals cells
+    private boolean serverVisibility = false;
+
     // This is the id of the game player/client/user. So this is you.
     // It will be distributed by the server at the start of the game
     private int userId = 0;
 
     public Maze() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Creates a maze where the layout and every cheese placement follow from
+     * the seed.
+     */
+    public Maze(long seed) {
+        this(seed, NUM_OF_ROWS, NUM_OF_COLUMNS);
+    }
+
+    public Maze(long seed, int rows, int cols) {
+        this(seed, rows, cols, MazeGenerator.DEPTH_FIRST);
+    }
+
+    /**
+     * Creates a seeded maze of the given size, carved by the given engine.
+     * Players start in the four corners.
+     */
+    public Maze(long seed, int rows, int cols, MazeGenerator generator) {
+        this.numOfRows = rows;
+        this.numOfColumns = cols;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
         // Create board
-        maze = new MazeBuilder(NUM_OF_ROWS, NUM_OF_COLUMNS).getMaze();
+        grid = generator.generate(numOfRows, numOfColumns, random.split());
         revealBorders();
 
         // Add players to board
         addPlayerToBoard(0, 1, 1); // top left
-        addPlayerToBoard(1, 1, NUM_OF_COLUMNS - 2); // top right
-        addPlayerToBoard(2, NUM_OF_ROWS - 2, 1); // bottom left
-        addPlayerToBoard(3, NUM_OF_ROWS - 2, NUM_OF_COLUMNS - 2);
+        addPlayerToBoard(1, 1, numOfColumns - 2); // top right
+        addPlayerToBoard(2, numOfRows - 2, 1); // bottom left
+        addPlayerToBoard(3, numOfRows - 2, numOfColumns - 2);
         removeWallsAroundPlayers();
         loadWallGraphics();
 
@@ -31,25 +68,29 @@ public class Maze {
 
     private void addPlayerToBoard(int playerId, int row, int col) {
         players[playerId] = new Player(playerId, col, row);
+        grid.addOccupant(row, col, playerId);
         updateVisibilityAroundPlayer(playerId);
     }
 
     public Maze(boolean serverGiven) {
+        this(serverGiven, NUM_OF_ROWS, NUM_OF_COLUMNS);
+    }
+
+    public Maze(boolean serverGiven, int rows, int cols) {
         // Default constructor where the maze is populated via server
+        this.numOfRows = rows;
+        this.numOfColumns = cols;
+        this.seed = 0;
+        this.random = new SplittableRandom();
 
         // Fill maze entirely with walls
-        this.maze = new MazeObject[NUM_OF_ROWS][NUM_OF_COLUMNS];
-        for (int i = 0; i < NUM_OF_ROWS; i++) {
-            for (int j = 0; j < NUM_OF_COLUMNS; j++) {
-                this.maze[i][j] = new MazeObject(false);
-            }
-        }
+        this.grid = new MazeGrid(numOfRows, numOfColumns);
 
         // Add players to board
         addPlayerToBoard(0, 1, 1); // top left
-        addPlayerToBoard(1, 1, NUM_OF_COLUMNS - 2); // top right
-        addPlayerToBoard(2, NUM_OF_ROWS - 2, 1); // bottom left
-        addPlayerToBoard(3, NUM_OF_ROWS - 2, NUM_OF_COLUMNS - 2);
+        addPlayerToBoard(1, 1, numOfColumns - 2); // top right
+        addPlayerToBoard(2, numOfRows - 2, 1); // bottom left
+        addPlayerToBoard(3, numOfRows - 2, numOfColumns - 2);
 
         removeWallsAroundPlayers();
     }
@@ -112,7 +153,6 @@ public class Maze {
      * This method can be used by ANY/ALL players
      */
     public void processPlayerMove(int playerId, int row, int col) {
-        MazeObject temp = maze[row][col];
         if (checkForPlayer(playerId, row, col)) {
             // this is a player, deal with it
             System.out.println("Collision at " + row + ", " + col);
@@ -120,7 +160,7 @@ public class Maze {
         } else if (checkForCheese(row, col)) {
             cheeseFound(playerId, row, col);
 
-        } else if (!temp.isPassable()) {
+        } else if (!grid.isPassable(row, col)) {
             // this is a wall, deal with it
             System.out.println("Wall at " + row + ", " + col);
 
@@ -129,6 +169,14 @@ public class Maze {
         }
     }
 
+    /**
+     * Whether the server would let playerId move onto this cell: on the board,
+     * not a wall and nobody else standing there.
+     */
+    public boolean canMoveTo(int playerId, int row, int col) {
+        return grid.inBounds(row, col) && grid.isPassable(row, col) && !checkForPlayer(playerId, row, col);
+    }
+
     /**
      * This method will take in a row and col, and check if that cell has another
      * player
@@ -139,20 +187,13 @@ public class Maze {
      * @return True if collision, false otherwise
      */
     public boolean checkForPlayer(int playerId, int row, int col) {
-
-        for (int i = 0; i < 4; i++) {
-            if (i == playerId) {
-                continue;
-            }
-            int otherPlayerRow = players[i].getRow();
-            int otherPlayerCol = players[i].getCol();
-
-            // check for collision
-            if (row == otherPlayerRow && col == otherPlayerCol) {
-                return true;
-            }
+        // The occupancy index answers this without looking at the players
+        int occupant = grid.getOccupant(row, col);
+        if (occupant == MazeGrid.NO_PLAYER) {
+            return false;
         }
-        return false;
+        // check for collision, the index may name playerId itself if someone shares its cell
+        return occupant != playerId || grid.getOccupantCount(row, col) > 1;
     }
 
     private boolean checkForCheese(int row, int col) {
@@ -164,11 +205,8 @@ public class Maze {
 
     // Used with the client
     public void processPlayerMove(int playerId, int row, int col, Client client) {
-        MazeObject temp = maze[row][col];
-        if (temp instanceof Cheese) {
-            cheeseFound(playerId, row, col);
-
-        } else if (!temp.isPassable()) {
+        // Cheese is never stored in the grid, the server decides who collected it
+        if (!grid.isPassable(row, col)) {
             // this is a wall, deal with it
             System.out.println("Wall at " + row + ", " + col);
 
@@ -207,9 +245,22 @@ public class Maze {
      */
     public void movePlayer(int playerId, int row, int col) {
         updatePlayerPosition(playerId, row, col);
-        updateVisibilityAroundPlayer(playerId);
+        if (!serverVisibility) {
+            updateVisibilityAroundPlayer(playerId);
+        }
         notifyClientAboutUserMove(); // TODO: DELETE ME
-        printMaze();
+        // Rendering 400 cells on every move made stdout the bottleneck, so only at debug level
+        Log.debug(this::renderMaze);
+    }
+
+    /**
+     * Stops revealing the cells around players here. Used by a Client in the
+     * fog, which is told about each cell by the server when it is revealed.
+     * The border stays visible.
+     */
+    public void useServerVisibility() {
+        serverVisibility = true;
+        revealBorders();
     }
 
     /**
@@ -220,14 +271,14 @@ public class Maze {
         int playerRow = p.getRow();
         int playerCol = p.getCol();
 
-        maze[playerRow - 1][playerCol - 1].setVisible(); // Top left
-        maze[playerRow - 1][playerCol].setVisible(); // Top mid
-        maze[playerRow - 1][playerCol + 1].setVisible(); // Top right
-        maze[playerRow][playerCol - 1].setVisible(); // Mid left
-        maze[playerRow][playerCol + 1].setVisible(); // Mid right
-        maze[playerRow + 1][playerCol - 1].setVisible(); // Bot left
-        maze[playerRow + 1][playerCol].setVisible(); // Bot mid
-        maze[playerRow + 1][playerCol + 1].setVisible(); // Bot right
+        grid.setVisible(playerRow - 1, playerCol - 1); // Top left
+        grid.setVisible(playerRow - 1, playerCol); // Top mid
+        grid.setVisible(playerRow - 1, playerCol + 1); // Top right
+        grid.setVisible(playerRow, playerCol - 1); // Mid left
+        grid.setVisible(playerRow, playerCol + 1); // Mid right
+        grid.setVisible(playerRow + 1, playerCol - 1); // Bot left
+        grid.setVisible(playerRow + 1, playerCol); // Bot mid
+        grid.setVisible(playerRow + 1, playerCol + 1); // Bot right
     }
 
     /**
@@ -239,40 +290,74 @@ public class Maze {
      * @param col      Target col of the intended move
      */
     private void updatePlayerPosition(int playerId, int row, int col) {
-        players[playerId].setRow(row);
-        players[playerId].setCol(col);
+        Player player = players[playerId];
+        int oldRow = player.getRow();
+        int oldCol = player.getCol();
+        player.setRow(row);
+        player.setCol(col);
+        if (grid.removeOccupant(oldRow, oldCol, playerId)) {
+            // Someone else is still on the old cell. Only happens if a move was not checked for
+            // collisions, so looking through the players here is fine
+            for (Player other : players) {
+                if (other != null && other.getRow() == oldRow && other.getCol() == oldCol) {
+                    grid.setOccupant(oldRow, oldCol, other.getId());
+                    break;
+                }
+            }
+        }
+        grid.addOccupant(row, col, playerId);
+        if (freeCells != null) {
+            if (grid.isPassable(oldRow, oldCol) && !grid.isOccupied(oldRow, oldCol)) {
+                freeCells.add(grid.index(oldRow, oldCol));
+            }
+            freeCells.remove(grid.index(row, col));
+        }
     }
 
     public void printMaze() {
-        for (int row = 0; row < NUM_OF_ROWS; row++) {
-            for (int col = 0; col < NUM_OF_COLUMNS; col++) {
-                printMazeObject(row, col);
+        System.out.print(renderMaze());
+    }
+
+    /**
+     * Draws the maze as ASCII art, the same picture printMaze() prints. Built
+     * as one string so it can be handed to the logger or an admin command.
+     */
+    public String renderMaze() {
+        StringBuilder out = new StringBuilder(numOfRows * (numOfColumns * 2 + 1) + 32);
+        for (int row = 0; row < numOfRows; row++) {
+            for (int col = 0; col < numOfColumns; col++) {
+                out.append(mazeObjectSymbol(row, col));
             }
-            System.out.println();
+            out.append('\n');
         }
 
         // debug line
-        System.out.println("You are at " + players[userId].getRow() + ", " + players[userId].getCol());
+        out.append("You are at ").append(players[userId].getRow()).append(", ").append(players[userId].getCol())
+                .append('\n');
+        return out.toString();
     }
 
     public void printMazeObject(int row, int col) {
-        MazeObject obj = maze[row][col];
+        System.out.print(mazeObjectSymbol(row, col));
+    }
+
+    private String mazeObjectSymbol(int row, int col) {
         // here, we use -1 because no playerId can be -1. SO this will check for ALL
         // players
         if (checkForPlayer(-1, row, col)) {
-            System.out.print(getPlayerWithRowCol(row, col) + " ");
+            return getPlayerWithRowCol(row, col) + " ";
 
         } else if (checkForCheese(row, col)) {
-            System.out.print("X ");
+            return "X ";
 
-        } else if (!obj.isVisible()) {
-            System.out.print(". ");
+        } else if (!grid.isVisible(row, col)) {
+            return ". ";
 
         } else {
-            if (!obj.isPassable()) {
-                System.out.print("# ");
+            if (!grid.isPassable(row, col)) {
+                return "# ";
             } else {
-                System.out.print("  ");
+                return "  ";
             }
         }
     }
@@ -288,33 +373,26 @@ public class Maze {
      * 
      */
     private Player getPlayerWithRowCol(int row, int col) {
-        for (int i = 0; i < 4; i++) {
-            int playerRow = players[i].getRow();
-            int playerCol = players[i].getCol();
-
-            if (playerRow == row && playerCol == col) {
-                return players[i];
-            }
-        }
-        return null;
+        int occupant = grid.getOccupant(row, col);
+        return occupant == MazeGrid.NO_PLAYER ? null : players[occupant];
     }
 
     public void revealEntireMaze() {
-        for (int row = 0; row < NUM_OF_ROWS; row++) {
-            for (int col = 0; col < NUM_OF_COLUMNS; col++) {
-                maze[row][col].setVisible();
+        for (int row = 0; row < numOfRows; row++) {
+            for (int col = 0; col < numOfColumns; col++) {
+                grid.setVisible(row, col);
             }
         }
         printMaze();
     }
 
     private void revealBorders() {
-        for (int row = 0; row < NUM_OF_ROWS; row++) {
-            for (int col = 0; col < NUM_OF_COLUMNS; col++) {
-                if (row == 0 || row == NUM_OF_ROWS - 1) {
-                    maze[row][col].setVisible();
-                } else if (col == 0 || col == NUM_OF_COLUMNS - 1) {
-                    maze[row][col].setVisible();
+        for (int row = 0; row < numOfRows; row++) {
+            for (int col = 0; col < numOfColumns; col++) {
+                if (row == 0 || row == numOfRows - 1) {
+                    grid.setVisible(row, col);
+                } else if (col == 0 || col == numOfColumns - 1) {
+                    grid.setVisible(row, col);
                 }
             }
         }
@@ -325,81 +403,79 @@ public class Maze {
         // player 0, starting at top left corner
         row = players[0].getRow();
         col = players[0].getCol();
-        maze[row][col + 1] = new MazeObject(true, true); // right
-        maze[row + 1][col] = new MazeObject(true, true); // bottom
-        maze[row + 1][col + 1] = new MazeObject(true, true); // bottom right
+        grid.setCell(row, col + 1, true, true); // right
+        grid.setCell(row + 1, col, true, true); // bottom
+        grid.setCell(row + 1, col + 1, true, true); // bottom right
 
         // player 1, starting at top right corner
         row = players[1].getRow();
         col = players[1].getCol();
-        maze[row][col - 1] = new MazeObject(true, true); // left
-        maze[row + 1][col] = new MazeObject(true, true); // bottom
-        maze[row + 1][col - 1] = new MazeObject(true, true); // bottom left
+        grid.setCell(row, col - 1, true, true); // left
+        grid.setCell(row + 1, col, true, true); // bottom
+        grid.setCell(row + 1, col - 1, true, true); // bottom left
 
         // player 2, starting at bottom left corner
         row = players[2].getRow();
         col = players[2].getCol();
-        maze[row - 1][col] = new MazeObject(true, true); // top
-        maze[row][col + 1] = new MazeObject(true, true); // right
-        maze[row - 1][col + 1] = new MazeObject(true, true); // top right
+        grid.setCell(row - 1, col, true, true); // top
+        grid.setCell(row, col + 1, true, true); // right
+        grid.setCell(row - 1, col + 1, true, true); // top right
 
         // player 3, starting at bottom right corner
         row = players[3].getRow();
         col = players[3].getCol();
-        maze[row - 1][col] = new MazeObject(true, true); // top
-        maze[row][col - 1] = new MazeObject(true, true); // left
-        maze[row - 1][col - 1] = new MazeObject(true, true); // top left
+        grid.setCell(row - 1, col, true, true); // top
+        grid.setCell(row, col - 1, true, true); // left
+        grid.setCell(row - 1, col - 1, true, true); // top left
 
     }
 
     private void loadWallGraphics() {
-        for (int row = 1; row < NUM_OF_ROWS - 1; row++) {
-            for (int col = 1; col < NUM_OF_COLUMNS - 1; col++) {
-                MazeObject obj = maze[row][col];
-
+        for (int row = 1; row < numOfRows - 1; row++) {
+            for (int col = 1; col < numOfColumns - 1; col++) {
                 // If not a wall, then skip
-                if (obj.isPassable()) {
+                if (grid.isPassable(row, col)) {
                     continue;
                 }
 
-                boolean top = !maze[row - 1][col].isPassable();
-                boolean bot = !maze[row + 1][col].isPassable();
-                boolean left = !maze[row][col - 1].isPassable();
-                boolean right = !maze[row][col + 1].isPassable();
+                boolean top = !grid.isPassable(row - 1, col);
+                boolean bot = !grid.isPassable(row + 1, col);
+                boolean left = !grid.isPassable(row, col - 1);
+                boolean right = !grid.isPassable(row, col + 1);
 
                 // T-shaped walls
                 if (top && left && right) {
-                    obj.setImageFilePath("T-1.png");
+                    grid.setSprite(row, col, "T-1.png");
                 } else if (top && left && bot) {
-                    obj.setImageFilePath("T-2.png");
+                    grid.setSprite(row, col, "T-2.png");
                 } else if (left && right && bot) {
-                    obj.setImageFilePath("T-3.png");
+                    grid.setSprite(row, col, "T-3.png");
                 } else if (top && right && bot) {
-                    obj.setImageFilePath("T-4.png");
+                    grid.setSprite(row, col, "T-4.png");
                 }
 
                 // L-shaped walls
                 else if (top && right) {
-                    obj.setImageFilePath("L-1.png");
+                    grid.setSprite(row, col, "L-1.png");
                 } else if (top && left) {
-                    obj.setImageFilePath("L-2.png");
+                    grid.setSprite(row, col, "L-2.png");
                 } else if (left && bot) {
-                    obj.setImageFilePath("L-3.png");
+                    grid.setSprite(row, col, "L-3.png");
                 } else if (bot && right) {
-                    obj.setImageFilePath("L-4.png");
+                    grid.setSprite(row, col, "L-4.png");
                 }
 
                 // Horizontal and Vertical
                 else if (left && right) {
-                    obj.setImageFilePath("hori.png");
+                    grid.setSprite(row, col, "hori.png");
                 } else if (top && bot) {
-                    obj.setImageFilePath("verti.png");
+                    grid.setSprite(row, col, "verti.png");
                 } else if (left || right) {
-                    obj.setImageFilePath("hori.png");
+                    grid.setSprite(row, col, "hori.png");
                 } else if (top || bot) {
-                    obj.setImageFilePath("verti.png");
+                    grid.setSprite(row, col, "verti.png");
                 } else {
-                    obj.setImageFilePath("Single_block.png");
+                    grid.setSprite(row, col, "Single_block.png");
                 }
 
             }
@@ -410,21 +486,21 @@ public class Maze {
 
     private void loadBorderGraphics() {
 
-        for (int row = 0; row < NUM_OF_ROWS; row++) {
-            for (int col = 0; col < NUM_OF_COLUMNS; col++) {
-                if (row == 0 || row == NUM_OF_ROWS - 1) {
-                    maze[row][col].setImageFilePath("hori.png");
-                } else if (col == 0 || col == NUM_OF_COLUMNS - 1) {
-                    maze[row][col].setImageFilePath("verti.png");
+        for (int row = 0; row < numOfRows; row++) {
+            for (int col = 0; col < numOfColumns; col++) {
+                if (row == 0 || row == numOfRows - 1) {
+                    grid.setSprite(row, col, "hori.png");
+                } else if (col == 0 || col == numOfColumns - 1) {
+                    grid.setSprite(row, col, "verti.png");
                 }
             }
         }
 
         // load graphic for the 4 corners
-        maze[0][0].setImageFilePath("L-4.png");
-        maze[0][NUM_OF_COLUMNS - 1].setImageFilePath("L-3.png");
-        maze[NUM_OF_ROWS - 1][0].setImageFilePath("L-1.png");
-        maze[NUM_OF_ROWS - 1][NUM_OF_COLUMNS - 1].setImageFilePath("L-2.png");
+        grid.setSprite(0, 0, "L-4.png");
+        grid.setSprite(0, numOfColumns - 1, "L-3.png");
+        grid.setSprite(numOfRows - 1, 0, "L-1.png");
+        grid.setSprite(numOfRows - 1, numOfColumns - 1, "L-2.png");
 
         loadSpecialBorderGraphics();
 
@@ -437,108 +513,108 @@ public class Maze {
      * North, East, South, West, and the directions in between
      */
     private void loadSpecialBorderGraphics() {
-        for (int row = 0; row < NUM_OF_ROWS; row++) {
-            for (int col = 0; col < NUM_OF_COLUMNS; col++) {
+        for (int row = 0; row < numOfRows; row++) {
+            for (int col = 0; col < numOfColumns; col++) {
 
                 // ignore corner blocks
                 if ((row == 0 && col == 0) ||
-                        (row == 0 && col == NUM_OF_COLUMNS - 1) ||
-                        (row == NUM_OF_ROWS - 1 && col == 0) ||
-                        (row == NUM_OF_ROWS - 1 && col == NUM_OF_COLUMNS - 1)) {
+                        (row == 0 && col == numOfColumns - 1) ||
+                        (row == numOfRows - 1 && col == 0) ||
+                        (row == numOfRows - 1 && col == numOfColumns - 1)) {
                     continue;
                 }
 
                 // top border
                 if (row == 0) {
-                    boolean sw = !maze[row + 1][col - 1].isPassable();
-                    boolean s = !maze[row + 1][col].isPassable();
-                    boolean se = !maze[row + 1][col + 1].isPassable();
+                    boolean sw = !grid.isPassable(row + 1, col - 1);
+                    boolean s = !grid.isPassable(row + 1, col);
+                    boolean se = !grid.isPassable(row + 1, col + 1);
 
                     if (sw && s && se) {
-                        maze[row + 1][col].setImageFilePath("hori.png");
+                        grid.setSprite(row + 1, col, "hori.png");
 
                     } else if (sw && s) {
-                        maze[row][col].setImageFilePath("T-3.png");
-                        maze[row + 1][col].setImageFilePath("L-2.png");
+                        grid.setSprite(row, col, "T-3.png");
+                        grid.setSprite(row + 1, col, "L-2.png");
 
                     } else if (s && se) {
-                        maze[row][col].setImageFilePath("T-3.png");
-                        maze[row + 1][col].setImageFilePath("L-1.png");
+                        grid.setSprite(row, col, "T-3.png");
+                        grid.setSprite(row + 1, col, "L-1.png");
 
                     } else if (s) {
-                        maze[row][col].setImageFilePath("T-3.png");
-                        maze[row + 1][col].setImageFilePath("verti.png");
+                        grid.setSprite(row, col, "T-3.png");
+                        grid.setSprite(row + 1, col, "verti.png");
                     }
 
                 }
 
                 // bottom border
-                else if (row == NUM_OF_ROWS - 1) {
-                    boolean nw = !maze[row - 1][col - 1].isPassable();
-                    boolean n = !maze[row - 1][col].isPassable();
-                    boolean ne = !maze[row - 1][col + 1].isPassable();
+                else if (row == numOfRows - 1) {
+                    boolean nw = !grid.isPassable(row - 1, col - 1);
+                    boolean n = !grid.isPassable(row - 1, col);
+                    boolean ne = !grid.isPassable(row - 1, col + 1);
 
                     if (nw && n && ne) {
-                        maze[row - 1][col].setImageFilePath("hori.png");
+                        grid.setSprite(row - 1, col, "hori.png");
 
                     } else if (nw && n) {
-                        maze[row - 1][col].setImageFilePath("L-3.png");
-                        maze[row][col].setImageFilePath("T-1.png");
+                        grid.setSprite(row - 1, col, "L-3.png");
+                        grid.setSprite(row, col, "T-1.png");
 
                     } else if (n && ne) {
-                        maze[row - 1][col].setImageFilePath("L-4.png");
-                        maze[row][col].setImageFilePath("T-1.png");
+                        grid.setSprite(row - 1, col, "L-4.png");
+                        grid.setSprite(row, col, "T-1.png");
 
                     } else if (n) {
-                        maze[row - 1][col].setImageFilePath("verti.png");
-                        maze[row][col].setImageFilePath("T-1.png");
+                        grid.setSprite(row - 1, col, "verti.png");
+                        grid.setSprite(row, col, "T-1.png");
                     }
                 }
 
                 // left border
                 else if (col == 0) {
-                    boolean ne = !maze[row - 1][col + 1].isPassable();
-                    boolean e = !maze[row][col + 1].isPassable();
-                    boolean se = !maze[row + 1][col + 1].isPassable();
+                    boolean ne = !grid.isPassable(row - 1, col + 1);
+                    boolean e = !grid.isPassable(row, col + 1);
+                    boolean se = !grid.isPassable(row + 1, col + 1);
 
                     if (ne && e && se) {
-                        maze[row][col + 1].setImageFilePath("verti.png");
-                        maze[row][col].setImageFilePath("T-4.png");
+                        grid.setSprite(row, col + 1, "verti.png");
+                        grid.setSprite(row, col, "T-4.png");
 
                     } else if (ne && e) {
-                        maze[row][col + 1].setImageFilePath("L-2.png");
-                        maze[row][col].setImageFilePath("T-4.png");
+                        grid.setSprite(row, col + 1, "L-2.png");
+                        grid.setSprite(row, col, "T-4.png");
 
                     } else if (e && se) {
-                        maze[row][col + 1].setImageFilePath("L-3.png");
-                        maze[row][col].setImageFilePath("T-4.png");
+                        grid.setSprite(row, col + 1, "L-3.png");
+                        grid.setSprite(row, col, "T-4.png");
 
                     } else if (e) {
-                        maze[row][col + 1].setImageFilePath("hori.png");
-                        maze[row][col].setImageFilePath("T-4.png");
+                        grid.setSprite(row, col + 1, "hori.png");
+                        grid.setSprite(row, col, "T-4.png");
                     }
                 }
 
                 // right border
-                else if (col == NUM_OF_COLUMNS - 1) {
-                    boolean nw = !maze[row - 1][col - 1].isPassable();
-                    boolean w = !maze[row][col - 1].isPassable();
-                    boolean sw = !maze[row + 1][col - 1].isPassable();
+                else if (col == numOfColumns - 1) {
+                    boolean nw = !grid.isPassable(row - 1, col - 1);
+                    boolean w = !grid.isPassable(row, col - 1);
+                    boolean sw = !grid.isPassable(row + 1, col - 1);
 
                     if (nw && w && sw) {
-                        maze[row][col - 1].setImageFilePath("verti.png");
+                        grid.setSprite(row, col - 1, "verti.png");
 
                     } else if (nw && w) {
-                        maze[row][col - 1].setImageFilePath("L-1.png");
-                        maze[row][col].setImageFilePath("T-2.png");
+                        grid.setSprite(row, col - 1, "L-1.png");
+                        grid.setSprite(row, col, "T-2.png");
 
                     } else if (w && sw) {
-                        maze[row][col - 1].setImageFilePath("L-4.png");
-                        maze[row][col].setImageFilePath("T-2.png");
+                        grid.setSprite(row, col - 1, "L-4.png");
+                        grid.setSprite(row, col, "T-2.png");
 
                     } else if (w) {
-                        maze[row][col - 1].setImageFilePath("hori.png");
-                        maze[row][col].setImageFilePath("T-2.png");
+                        grid.setSprite(row, col - 1, "hori.png");
+                        grid.setSprite(row, col, "T-2.png");
                     }
                 }
 
@@ -548,8 +624,16 @@ public class Maze {
 
     // getters
 
+    /**
+     * A MazeObject copy of the board for code that still works with objects.
+     * Changes to it do not affect the maze, use getGrid() for that.
+     */
     public MazeObject[][] getMaze() {
-        return maze;
+        return grid.toMazeObjects();
+    }
+
+    public MazeGrid getGrid() {
+        return grid;
     }
 
     public Player[] getPlayers() {
@@ -576,24 +660,35 @@ public class Maze {
      */
     public int[] placeCheeseRandomly() {
         int[] ret = new int[2];
-        int cheeseRow;
-        int cheeseCol;
-        Random random = new Random();
-
-        while (true) {
-            cheeseRow = random.nextInt(NUM_OF_ROWS);
-            cheeseCol = random.nextInt(NUM_OF_COLUMNS);
-
-            MazeObject temp = maze[cheeseRow][cheeseCol];
-            // If not a wall or a player, place cheese there
-            if (temp.isPassable() && !checkForPlayer(-1, cheeseRow, cheeseCol)) {
-                cheese = new Cheese(cheeseCol, cheeseRow);
-                System.out.println("Cheese at " + cheeseRow + ", " + cheeseCol);
-                ret[0] = cheeseRow;
-                ret[1] = cheeseCol;
-                return ret;
+        // Any cell that is not a wall or a player, picked in one draw
+        int cell = getFreeCells().randomCell(random);
+        int cheeseRow = cell / grid.getCols();
+        int cheeseCol = cell % grid.getCols();
+
+        cheese = new Cheese(cheeseCol, cheeseRow);
+        ret[0] = cheeseRow;
+        ret[1] = cheeseCol;
+        Log.debug(() -> "Cheese at " + ret[0] + ", " + ret[1]);
+        return ret;
+    }
+
+    // Built lazily because the client only finishes its board after the constructor
+    private FreeCellSet getFreeCells() {
+        if (freeCells == null) {
+            freeCells = new FreeCellSet(grid.getRows() * grid.getCols());
+            for (int row = 0; row < grid.getRows(); row++) {
+                for (int col = 0; col < grid.getCols(); col++) {
+                    if (grid.isPassable(row, col) && !grid.isOccupied(row, col)) {
+                        freeCells.add(grid.index(row, col));
+                    }
+                }
             }
         }
+        return freeCells;
+    }
+
+    public long getSeed() {
+        return seed;
     }
 
     public void placeCheeseAt(int row, int col) {
@@ -1,6 +1,7 @@
 package game;
 
 import java.util.*;
+import java.util.random.RandomGenerator;
 
 /**
  * This class creates a randomized maze, done in the follow steps :
@@ -18,6 +19,7 @@ public final class MazeBuilder {
     private final int rows;
     private final int columns;
     private MazeObject[][] maze;
+    private final RandomGenerator random;
 
     private final int MIN_ROWS = 4;
     private final int MIN_COLUMNS = 4;
@@ -26,9 +28,18 @@ public final class MazeBuilder {
         // Java FORCES the following two lines.
         this.columns = 0;
         this.rows = 0;
+        this.random = null;
     }
 
     public MazeBuilder(int columns, int rows) {
+        this(columns, rows, new SplittableRandom());
+    }
+
+    /**
+     * Builds a maze using the given random source, so the same seed always
+     * gives the same maze.
+     */
+    public MazeBuilder(int columns, int rows, RandomGenerator random) {
         if (columns < MIN_COLUMNS || rows < MIN_ROWS) {
             throw new IllegalArgumentException(
                     "MazeBuilder was intended to create at least a " + MIN_ROWS + "x" + MIN_COLUMNS + " maze.");
@@ -36,6 +47,7 @@ public final class MazeBuilder {
 
         this.columns = columns;
         this.rows = rows;
+        this.random = random;
 
         generateMaze();
     }
@@ -79,7 +91,7 @@ public final class MazeBuilder {
                 }
             }
         }
-        Collections.shuffle(walls);
+        Collections.shuffle(walls, random);
 
         int i = 0;
         int wallsRemoved = 0;
@@ -197,11 +209,10 @@ public final class MazeBuilder {
             nonVisitedAdjacentPoints.add(this.maze[currX][currY - distance]);
         }
 
-        final int min = 0;
-        final int max = nonVisitedAdjacentPoints.size() - 1;
-        int randomInt = (int) (Math.random() * (max - min + 1));
-
-        return nonVisitedAdjacentPoints.isEmpty() ? null : nonVisitedAdjacentPoints.get(randomInt);
+        if (nonVisitedAdjacentPoints.isEmpty()) {
+            return null;
+        }
+        return nonVisitedAdjacentPoints.get(random.nextInt(nonVisitedAdjacentPoints.size()));
     }
 
     /**
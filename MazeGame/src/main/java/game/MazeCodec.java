@@ -0,0 +1,207 @@
+package game;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * How the maze tile bytes (two 4 bit tiles per byte) travel in MAZE_CHUNK
+ * packets. A protocol v3 client lists the codecs it can decode when it
+ * connects and the server picks one of them, see Protocol.
+ *
+ * RAW sends the tile bytes as they are. RLE sends runs of up to 8 equal
+ * tiles. Corridors are one tile wide, so most runs are short and alternate
+ * between wall (0) and floor (1): such a pair of runs takes one byte,
+ * 0 wall-or-floor first run - 1 (3 bits) second run - 1 (3 bits), and any
+ * other run takes 1 tile (4 bits) run - 1 (3 bits). DEFLATE is java.util.zip
+ * without the zlib header and checksum, TCP already has one.
+ * MazeCodecBenchmark in the tests prints what each one costs and saves.
+ */
+public enum MazeCodec {
+    RAW(0) {
+        @Override
+        public byte[] encode(byte[] tiles, int offset, int length) {
+            return Arrays.copyOfRange(tiles, offset, offset + length);
+        }
+
+        @Override
+        public void decode(byte[] encoded, byte[] tiles) throws IOException {
+            if (encoded.length != tiles.length) {
+                throw new IOException("Raw maze chunk of " + encoded.length + " bytes, expected " + tiles.length);
+            }
+            System.arraycopy(encoded, 0, tiles, 0, tiles.length);
+        }
+    },
+    RLE(1) {
+        @Override
+        public byte[] encode(byte[] tiles, int offset, int length) {
+            // Worst case is a byte per tile
+            byte[] encoded = new byte[2 * length];
+            int out = 0;
+            int tileCount = 2 * length;
+            int tile = 0;
+            while (tile < tileCount) {
+                int value = nibble(tiles, offset, tile);
+                int run = runLength(tiles, offset, tile, tileCount, value);
+                tile += run;
+                int nextRun = 0;
+                if (value <= 1 && tile < tileCount && nibble(tiles, offset, tile) == 1 - value) {
+                    nextRun = runLength(tiles, offset, tile, tileCount, 1 - value);
+                }
+                if (nextRun > 0) {
+                    // Wall then floor or floor then wall, both runs in one byte
+                    encoded[out++] = (byte) ((value << 6) | ((run - 1) << 3) | (nextRun - 1));
+                    tile += nextRun;
+                } else {
+                    encoded[out++] = (byte) (0x80 | (value << 3) | (run - 1));
+                }
+            }
+            return Arrays.copyOf(encoded, out);
+        }
+
+        @Override
+        public void decode(byte[] encoded, byte[] tiles) throws IOException {
+            Arrays.fill(tiles, (byte) 0);
+            int tileCount = 2 * tiles.length;
+            int tile = 0;
+            for (byte b : encoded) {
+                if (b < 0) {
+                    tile = fill(tiles, tile, tileCount, (b >> 3) & 0b1111, (b & 0b111) + 1);
+                } else {
+                    int value = (b >> 6) & 1;
+                    tile = fill(tiles, tile, tileCount, value, ((b >> 3) & 0b111) + 1);
+                    tile = fill(tiles, tile, tileCount, 1 - value, (b & 0b111) + 1);
+                }
+            }
+            if (tile != tileCount) {
+                throw new IOException("Run length maze chunk has " + tile + " tiles, expected " + tileCount);
+            }
+        }
+
+        // Equal tiles starting at tile, at most the 8 one byte can hold
+        private int runLength(byte[] tiles, int offset, int tile, int tileCount, int value) {
+            int run = 1;
+            while (run < 8 && tile + run < tileCount && nibble(tiles, offset, tile + run) == value) {
+                run++;
+            }
+            return run;
+        }
+
+        private int fill(byte[] tiles, int tile, int tileCount, int value, int run) throws IOException {
+            if (tile + run > tileCount) {
+                throw new IOException("Run length maze chunk has more tiles than " + tileCount);
+            }
+            for (int end = tile + run; tile < end; tile++) {
+                tiles[tile / 2] |= (byte) (tile % 2 == 0 ? value << 4 : value);
+            }
+            return tile;
+        }
+    },
+    DEFLATE(2) {
+        @Override
+        public byte[] encode(byte[] tiles, int offset, int length) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(tiles, offset, length);
+                deflater.finish();
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 4 + 64);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    encoded.write(buffer, 0, count);
+                }
+                return encoded.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public void decode(byte[] encoded, byte[] tiles) throws IOException {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(encoded);
+                int total = 0;
+                while (total < tiles.length && !inflater.finished()) {
+                    int count = inflater.inflate(tiles, total, tiles.length - total);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    total += count;
+                }
+                if (total != tiles.length) {
+                    throw new IOException("Deflated maze chunk has " + total + " bytes, expected " + tiles.length);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Bad deflated maze chunk: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    // Sent in the handshake, so ids must never change
+    public final int id;
+
+    MazeCodec(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Encodes length tile bytes starting at offset.
+     */
+    public abstract byte[] encode(byte[] tiles, int offset, int length);
+
+    /**
+     * Decodes a whole encoded chunk, filling every byte of tiles.
+     *
+     * @throws IOException If encoded does not decode to exactly tiles.length bytes
+     */
+    public abstract void decode(byte[] encoded, byte[] tiles) throws IOException;
+
+    // The bit this codec has in the handshake's codec mask
+    public int mask() {
+        return 1 << id;
+    }
+
+    // Mask of every codec this build can decode
+    public static int allMask() {
+        int mask = 0;
+        for (MazeCodec codec : values()) {
+            mask |= codec.mask();
+        }
+        return mask;
+    }
+
+    public static MazeCodec forId(int id) {
+        for (MazeCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown maze codec: " + id);
+    }
+
+    /**
+     * Looks a codec up by the name used in the maze.codec property.
+     */
+    public static MazeCodec forName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    /**
+     * The codec to use with a client: the preferred one if the client can
+     * decode it, raw tiles otherwise. Every client can decode RAW.
+     */
+    public static MazeCodec choose(int clientMask, MazeCodec preferred) {
+        return (clientMask & preferred.mask()) != 0 ? preferred : RAW;
+    }
+
+    private static int nibble(byte[] tiles, int offset, int tile) {
+        byte b = tiles[offset + tile / 2];
+        return tile % 2 == 0 ? (b >> 4) & 0b00001111 : b & 0b00001111;
+    }
+}
@@ -0,0 +1,59 @@
+package game;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Something that can carve a maze into a fresh MazeGrid. Every engine opens
+ * the four corners, carves a spanning tree over the cells on odd rows and
+ * columns and then removes about 12% of the inner walls, so the results only
+ * differ in the texture of their corridors:
+ * "dfs" (GridMazeBuilder) makes long winding corridors,
+ * "kruskal" and "wilson" make many short dead ends, wilson with no bias at all,
+ * "eller" works one row at a time and can stream boards of any height.
+ */
+@FunctionalInterface
+public interface MazeGenerator {
+    MazeGenerator DEPTH_FIRST = GridMazeBuilder::build;
+    MazeGenerator KRUSKAL = KruskalMazeGenerator::build;
+    MazeGenerator WILSON = WilsonMazeGenerator::build;
+    MazeGenerator ELLER = EllerMazeGenerator::build;
+    // Names used by the maze.generator property. The index is the id sent in MAZE_SEED, so only add to the end
+    List<String> NAMES = List.of("dfs", "kruskal", "wilson", "eller");
+
+    /**
+     * @param rows   Number of rows, at least 4
+     * @param cols   Number of columns, at least 4
+     * @param random Random source, the same seed gives the same maze
+     * @return A grid with the walls set and nothing visible yet
+     */
+    MazeGrid generate(int rows, int cols, RandomGenerator random);
+
+    /**
+     * Looks an engine up by the name used in the maze.generator property.
+     */
+    static MazeGenerator forName(String name) {
+        return switch (name.toLowerCase()) {
+            case "dfs" -> DEPTH_FIRST;
+            case "kruskal" -> KRUSKAL;
+            case "wilson" -> WILSON;
+            case "eller" -> ELLER;
+            default -> throw new IllegalArgumentException("Unknown maze generator: " + name);
+        };
+    }
+
+    static MazeGenerator forId(int id) {
+        if (id < 0 || id >= NAMES.size()) {
+            throw new IllegalArgumentException("Unknown maze generator id: " + id);
+        }
+        return forName(NAMES.get(id));
+    }
+
+    static int idOf(String name) {
+        int id = NAMES.indexOf(name.toLowerCase());
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown maze generator: " + name);
+        }
+        return id;
+    }
+}
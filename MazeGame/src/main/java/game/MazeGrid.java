@@ -0,0 +1,208 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Compact board storage: one byte per cell in a flat row-major array instead
+ * of a MazeObject per cell. The low bits are flags and the high nibble picks
+ * the wall sprite, so a passability check is a single array read.
+ *
+ * Code that still wants MazeObjects can ask for a view with getCell() or
+ * toMazeObjects(); those are snapshots and do not write back to the grid.
+ */
+public final class MazeGrid {
+    public static final int WALL = 0b0001;
+    public static final int VISIBLE = 0b0010;
+    public static final int OCCUPIED = 0b0100;
+    public static final int NO_PLAYER = -1;
+
+    private static final int FLAG_MASK = 0b1111;
+    private static final int SPRITE_SHIFT = 4;
+
+    // Index in this table is what goes in a cell's high nibble. Index 0 is the default look of a wall
+    private static final String[] SPRITES = { "Single_block.png", "T-1.png", "T-2.png", "T-3.png", "T-4.png",
+            "L-1.png", "L-2.png", "L-3.png", "L-4.png", "hori.png", "verti.png" };
+
+    private final int rows;
+    private final int cols;
+    private final byte[] cells;
+    // Occupancy index: who stands on each cell and how many players do. Kept up to date by Maze as
+    // players move, so "is anyone here" and "who is here" cost the same for any number of players
+    private final int[] occupant;
+    private final byte[] occupantCount;
+
+    /**
+     * Creates a grid that is all hidden walls.
+     */
+    public MazeGrid(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = new byte[rows * cols];
+        Arrays.fill(cells, (byte) WALL);
+        this.occupant = new int[rows * cols];
+        Arrays.fill(occupant, NO_PLAYER);
+        this.occupantCount = new byte[rows * cols];
+    }
+
+    /**
+     * Packs a board built from MazeObjects, e.g. by MazeBuilder.
+     */
+    public static MazeGrid fromMazeObjects(MazeObject[][] objects) {
+        MazeGrid grid = new MazeGrid(objects.length, objects[0].length);
+        for (int row = 0; row < grid.rows; row++) {
+            for (int col = 0; col < grid.cols; col++) {
+                MazeObject obj = objects[row][col];
+                grid.setCell(row, col, obj.isPassable(), obj.isVisible());
+            }
+        }
+        return grid;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    public boolean inBounds(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    public boolean isPassable(int row, int col) {
+        return (cells[index(row, col)] & WALL) == 0;
+    }
+
+    public boolean isVisible(int row, int col) {
+        return (cells[index(row, col)] & VISIBLE) != 0;
+    }
+
+    public boolean isOccupied(int row, int col) {
+        return (cells[index(row, col)] & OCCUPIED) != 0;
+    }
+
+    public void setPassable(int row, int col, boolean passable) {
+        setFlag(row, col, WALL, !passable);
+    }
+
+    public void setVisible(int row, int col) {
+        setFlag(row, col, VISIBLE, true);
+    }
+
+    // Linear index versions for builders that walk the array directly
+    boolean isWallAt(int index) {
+        return (cells[index] & WALL) != 0;
+    }
+
+    void openAt(int index) {
+        cells[index] &= ~WALL;
+    }
+
+    /**
+     * Returns the player standing on a cell, or NO_PLAYER. If players share a
+     * cell this is one of them.
+     */
+    public int getOccupant(int row, int col) {
+        return occupant[index(row, col)];
+    }
+
+    public int getOccupantCount(int row, int col) {
+        return occupantCount[index(row, col)];
+    }
+
+    public void addOccupant(int row, int col, int playerId) {
+        int i = index(row, col);
+        occupant[i] = playerId;
+        occupantCount[i]++;
+        cells[i] |= OCCUPIED;
+    }
+
+    /**
+     * Takes a player off a cell.
+     *
+     * @return True if other players are still on the cell but the index no
+     *         longer knows which, the caller must then setOccupant() one of them
+     */
+    public boolean removeOccupant(int row, int col, int playerId) {
+        int i = index(row, col);
+        if (occupantCount[i] > 0) {
+            occupantCount[i]--;
+        }
+        if (occupantCount[i] == 0) {
+            occupant[i] = NO_PLAYER;
+            cells[i] &= ~OCCUPIED;
+            return false;
+        }
+        return occupant[i] == playerId;
+    }
+
+    public void setOccupant(int row, int col, int playerId) {
+        occupant[index(row, col)] = playerId;
+    }
+
+    /**
+     * Replaces a cell's wall and visibility state, keeping whether a player
+     * stands on it. The sprite goes back to the default.
+     */
+    public void setCell(int row, int col, boolean passable, boolean visible) {
+        int i = index(row, col);
+        int flags = (cells[i] & OCCUPIED) | (passable ? 0 : WALL) | (visible ? VISIBLE : 0);
+        cells[i] = (byte) flags;
+    }
+
+    private void setFlag(int row, int col, int flag, boolean on) {
+        int i = index(row, col);
+        cells[i] = (byte) (on ? cells[i] | flag : cells[i] & ~flag);
+    }
+
+    /**
+     * Sets the wall sprite of a cell by its file name, e.g. "T-1.png".
+     */
+    public void setSprite(int row, int col, String fileName) {
+        int sprite = 0;
+        for (int i = 0; i < SPRITES.length; i++) {
+            if (SPRITES[i].equals(fileName)) {
+                sprite = i;
+                break;
+            }
+        }
+        int i = index(row, col);
+        cells[i] = (byte) ((sprite << SPRITE_SHIFT) | (cells[i] & FLAG_MASK));
+    }
+
+    public String getSprite(int row, int col) {
+        return SPRITES[(cells[index(row, col)] >> SPRITE_SHIFT) & 0b1111];
+    }
+
+    // Same path MazeObject.getImageFilePath() gives
+    public String getImageFilePath(int row, int col) {
+        return "wall_sprites/" + getSprite(row, col);
+    }
+
+    /**
+     * A MazeObject copy of one cell, for code written against MazeObject.
+     */
+    public MazeObject getCell(int row, int col) {
+        MazeObject obj = new MazeObject(col, row, isPassable(row, col), isVisible(row, col));
+        obj.setImageFilePath(getSprite(row, col));
+        return obj;
+    }
+
+    /**
+     * A MazeObject copy of the whole board, indexed [row][col].
+     */
+    public MazeObject[][] toMazeObjects() {
+        MazeObject[][] objects = new MazeObject[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                objects[row][col] = getCell(row, col);
+            }
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,51 @@
+package game;
+
+import java.util.ArrayDeque;
+
+/**
+ * The user's moves that have been sent but not acknowledged yet. The Client
+ * moves the player as soon as a key is pressed. When an ACK comes back, the
+ * acknowledged moves are dropped, the player goes back to the position the
+ * server gave, and the moves still in flight are played again on top of it
+ * with the same checks the server will make. A rejected move therefore
+ * costs one correction rather than a jump back per move in flight.
+ */
+public class PendingMoves {
+    private final ArrayDeque<int[]> moves = new ArrayDeque<>();
+    private int nextSeq = 0;
+
+    /**
+     * Records a move that is about to be sent.
+     *
+     * @return The sequence number to send it with
+     */
+    public synchronized int add(int row, int col) {
+        int seq = nextSeq++;
+        moves.addLast(new int[] { seq, row, col });
+        return seq;
+    }
+
+    /**
+     * Applies an ACK. Moves up to seq are done with, the rest are replayed
+     * from (row, col).
+     *
+     * @return Where the player should be now, {row, col}
+     */
+    public synchronized int[] acknowledge(int seq, int row, int col, Maze maze, int playerId) {
+        while (!moves.isEmpty() && moves.peekFirst()[0] <= seq) {
+            moves.removeFirst();
+        }
+        int[] position = { row, col };
+        for (int[] move : moves) {
+            if (maze.canMoveTo(playerId, move[1], move[2])) {
+                position[0] = move[1];
+                position[1] = move[2];
+            }
+        }
+        return position;
+    }
+
+    public synchronized int size() {
+        return moves.size();
+    }
+}
@@ -1,10 +1,16 @@
 package game;
 
 public class PlayerMove {
+    // Moves from clients that do not number their moves
+    public static final int NO_SEQ = -1;
+
     private int playerId;
     private int row;
     private int col;
-
+    // Sequence number the client gave this move, acknowledged once it has been processed
+    private int seq = NO_SEQ;
+    // When the server queued this move, used to measure how long it waited
+    private long queuedAt;
 
     public PlayerMove(int playerId, int row, int col) {
         this.playerId = playerId;
@@ -13,6 +19,11 @@ public class PlayerMove {
 
     }
 
+    public PlayerMove(int playerId, int row, int col, int seq) {
+        this(playerId, row, col);
+        this.seq = seq;
+    }
+
     public int getRow() {
         return row;
     }
@@ -24,4 +35,16 @@ public class PlayerMove {
     public int getPlayerId() {
         return playerId;
     }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    public void setQueuedAt(long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
 }
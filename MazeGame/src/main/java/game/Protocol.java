@@ -0,0 +1,410 @@
+package game;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Wire format shared by the Client and the server.
+ *
+ * Version 1 is the original format. The client opens with the auth string,
+ * moves are 3 bytes, everything the server sends after the maze is 4 bytes,
+ * and rows, columns and player ids are packed into 5 and 2 bit fields. That
+ * caps boards at 32x32 and matches at 4 players, and the maze itself is
+ * assumed to be 20x20.
+ *
+ * Version 2 is asked for by sending the highest version the client speaks
+ * as one byte before the auth string. A version 1 client always starts with
+ * the 'm' of the auth string, so the two cannot be mixed up. The server
+ * answers with one byte, the version it will use. Every version 2 packet is
+ * a one byte token followed by varints, so on a 20x20 board a move is still
+ * 3 bytes from the client and 4 from the server, while larger boards and
+ * player ids simply take more bytes per field.
+ *
+ * The maze follows START as MAZE_CHUNK packets, each a slice of the tile
+ * bytes (two 4 bit tiles per byte) at a byte offset, so a client can show
+ * the board while the rest of it is still arriving.
+ *
+ * Version 3 is version 2 with compressed mazes. After the auth string the
+ * client sends one more byte, a mask of the MazeCodecs it can decode, and
+ * the server answers the version byte with the id of the codec it picked.
+ * Every MAZE_CHUNK then also carries the encoded length, and its bytes are
+ * the chunk's tile bytes encoded with that codec.
+ *
+ * A version 3 client that also sets SEED_MAZES in its codec mask may be
+ * sent MAZE_SEED instead of the chunks: the generator and seed the server
+ * built the maze with, and a checksum of the tile bytes. Generation and the
+ * first cheese placement only depend on the seed, so the client builds the
+ * same maze itself. If its tiles do not match the checksum it sends
+ * MAZE_REQUEST and gets the chunks after all.
+ *
+ * A version 3 client that sets FOG may be sent neither: it only learns
+ * cells as they are revealed, from REVEAL packets listing each newly
+ * revealed cell as the gap from the previous cell's index (the first from
+ * 0) and its tile. Cells come in increasing index order. The border is
+ * always visible and always wall, so it is never sent.
+ *
+ * A version 3 client that sets SEQ_MOVES puts a sequence number in front
+ * of the coordinates of every MOVE. Once the server has processed the move
+ * it answers with ACK: that number and where the player really is now,
+ * whether the move was allowed or not. The client predicts its own moves
+ * and uses the ACK to correct itself, so it is not sent its own position
+ * in MOVE any more.
+ *
+ * Version 2 packets:
+ * client: MOVE (seq) row col | PONG | MAZE_REQUEST
+ * server: START id rows cols players (row col) per player | MAZE_CHUNK offset
+ * length bytes (v3: MAZE_CHUNK offset length encodedLength bytes) |
+ * MAZE_SEED generator seed checksum | REVEAL count (gap tile) per cell | MOVE id row col | CHEESE id row col cheeseRow cheeseCol |
+ * WIN id | PING | ACK seq row col
+ */
+public final class Protocol {
+    public static final int V1 = 1;
+    public static final int V2 = 2;
+    public static final int V3 = 3;
+    public static final int LATEST = V3;
+
+    // Version 2 tokens. Both directions share the numbering
+    public static final byte MOVE = 0x02;
+    public static final byte CHEESE = 0x03;
+    public static final byte WIN = 0x04;
+    public static final byte START = 0x05;
+    public static final byte MAZE_CHUNK = 0x06;
+    public static final byte PING = 0x07;
+    public static final byte PONG = 0x07;
+    public static final byte MAZE_SEED = 0x08;
+    public static final byte MAZE_REQUEST = 0x09;
+    public static final byte REVEAL = 0x0A;
+    public static final byte ACK = 0x0B;
+
+    // Set in the version 3 codec mask by clients that can rebuild a maze from MAZE_SEED
+    public static final int SEED_MAZES = 0x80;
+    // Set in the version 3 codec mask by clients that can play in the fog, learning the maze from REVEAL
+    public static final int FOG = 0x40;
+    // Set in the version 3 codec mask by clients that number their moves and want each one acknowledged
+    public static final int SEQ_MOVES = 0x20;
+
+    // Returned by getVarInt() when the buffer ends in the middle of a varint
+    public static final int INCOMPLETE = -1;
+    // An int never needs more than 5 groups of 7 bits
+    public static final int MAX_VARINT_BYTES = 5;
+    // Largest version 2 packet other than START: a token and five varints
+    public static final int MAX_PACKET_SIZE = 1 + 5 * MAX_VARINT_BYTES;
+
+    private Protocol() {
+    }
+
+    /**
+     * Whether the first byte a client sends is a version number rather than
+     * the start of the version 1 auth string.
+     */
+    public static boolean isVersionByte(int firstByte) {
+        return firstByte >= V2 && firstByte < ' ';
+    }
+
+    // The version both sides speak, given the highest one the client asked for
+    public static int negotiate(int clientVersion) {
+        return Math.min(clientVersion, LATEST);
+    }
+
+    // Varints: 7 bits per byte, lowest bits first, top bit set on every byte but the last
+
+    /**
+     * Writes a varint into dst.
+     *
+     * @return The offset just past the varint
+     */
+    public static int putVarInt(byte[] dst, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Reads a varint from a byte array that is known to hold all of it.
+     */
+    public static int getVarInt(byte[] src, int offset) {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+            byte b = src[offset++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than " + MAX_VARINT_BYTES + " bytes");
+    }
+
+    /**
+     * Reads a varint from a buffer that may not have all of it yet.
+     *
+     * @return The value, or INCOMPLETE with the position left where it was
+     */
+    public static int getVarInt(ByteBuffer src) {
+        int start = src.position();
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+            if (!src.hasRemaining()) {
+                src.position(start);
+                return INCOMPLETE;
+            }
+            byte b = src.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than " + MAX_VARINT_BYTES + " bytes");
+    }
+
+    public static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Stream closed in the middle of a varint");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint longer than " + MAX_VARINT_BYTES + " bytes");
+    }
+
+    // Version 1 packets from the server, always 4 bytes written into dst from offset 0. The
+    // token is the top 3 bits, then the player id (2 bits) and rows and columns (5 bits each)
+
+    public static void encodeV1Move(byte[] dst, int playerId, int row, int col) {
+        // Token: 0b010 (MOVE)
+        dst[0] = (byte) (0b01000000 | ((playerId & 0b11) << 3) | ((row >> 2) & 0b111));
+        dst[1] = (byte) (((row & 0b11) << 6) | ((col & 0b11111) << 1));
+        dst[2] = 0; // Unused
+        dst[3] = 0; // Unused
+    }
+
+    public static void encodeV1Cheese(byte[] dst, int playerId, int row, int col, int cheeseRow, int cheeseCol) {
+        // Token: 0b011 (CHEESE_COLLECTED)
+        dst[0] = (byte) (0b01100000 | ((playerId & 0b11) << 3) | ((row >> 2) & 0b111));
+        dst[1] = (byte) (((row & 0b11) << 6) | ((col & 0b11111) << 1) | ((cheeseRow >> 4) & 0b1));
+        dst[2] = (byte) (((cheeseRow & 0b1111) << 4) | ((cheeseCol >> 1) & 0b1111));
+        dst[3] = (byte) (((cheeseCol & 0b1) << 7));
+    }
+
+    public static void encodeV1Win(byte[] dst, int playerId) {
+        // Token: 0b100 (GAME_WIN)
+        dst[0] = (byte) (0b10000000 | ((playerId & 0b11) << 3));
+        dst[1] = 0;
+        dst[2] = 0;
+        dst[3] = 0;
+    }
+
+    // Packet builders. Each writes into dst from offset 0 and returns the packet length
+
+    public static int encodeMoveRequest(byte[] dst, int row, int col) {
+        dst[0] = MOVE;
+        int offset = putVarInt(dst, 1, row);
+        return putVarInt(dst, offset, col);
+    }
+
+    public static int encodeMoveRequest(byte[] dst, int seq, int row, int col) {
+        dst[0] = MOVE;
+        int offset = putVarInt(dst, 1, seq);
+        offset = putVarInt(dst, offset, row);
+        return putVarInt(dst, offset, col);
+    }
+
+    public static int encodeAck(byte[] dst, int seq, int row, int col) {
+        dst[0] = ACK;
+        int offset = putVarInt(dst, 1, seq);
+        offset = putVarInt(dst, offset, row);
+        return putVarInt(dst, offset, col);
+    }
+
+    public static int encodeMove(byte[] dst, int playerId, int row, int col) {
+        dst[0] = MOVE;
+        int offset = putVarInt(dst, 1, playerId);
+        offset = putVarInt(dst, offset, row);
+        return putVarInt(dst, offset, col);
+    }
+
+    public static int encodeCheese(byte[] dst, int playerId, int row, int col, int cheeseRow, int cheeseCol) {
+        dst[0] = CHEESE;
+        int offset = putVarInt(dst, 1, playerId);
+        offset = putVarInt(dst, offset, row);
+        offset = putVarInt(dst, offset, col);
+        offset = putVarInt(dst, offset, cheeseRow);
+        return putVarInt(dst, offset, cheeseCol);
+    }
+
+    public static int encodeWin(byte[] dst, int playerId) {
+        dst[0] = WIN;
+        return putVarInt(dst, 1, playerId);
+    }
+
+    /**
+     * Builds the part of START that comes before the maze tiles.
+     *
+     * @param positions Row and column of every player, in player id order
+     */
+    public static byte[] encodeStartHeader(int playerId, int rows, int cols, int[][] positions) {
+        byte[] header = new byte[1 + (4 + 2 * positions.length) * MAX_VARINT_BYTES];
+        header[0] = START;
+        int offset = putVarInt(header, 1, playerId);
+        offset = putVarInt(header, offset, rows);
+        offset = putVarInt(header, offset, cols);
+        offset = putVarInt(header, offset, positions.length);
+        for (int[] position : positions) {
+            offset = putVarInt(header, offset, position[0]);
+            offset = putVarInt(header, offset, position[1]);
+        }
+        return Arrays.copyOf(header, offset);
+    }
+
+    /**
+     * Builds a MAZE_CHUNK carrying length tile bytes starting at offset.
+     */
+    public static byte[] encodeMazeChunk(byte[] tiles, int offset, int length) {
+        byte[] header = new byte[1 + 2 * MAX_VARINT_BYTES];
+        header[0] = MAZE_CHUNK;
+        int headerLength = putVarInt(header, 1, offset);
+        headerLength = putVarInt(header, headerLength, length);
+        byte[] chunk = Arrays.copyOf(header, headerLength + length);
+        System.arraycopy(tiles, offset, chunk, headerLength, length);
+        return chunk;
+    }
+
+    /**
+     * Builds a version 3 MAZE_CHUNK: the length tile bytes starting at
+     * offset, encoded with codec.
+     */
+    public static byte[] encodeMazeChunk(byte[] tiles, int offset, int length, MazeCodec codec) {
+        byte[] encoded = codec.encode(tiles, offset, length);
+        byte[] header = new byte[1 + 3 * MAX_VARINT_BYTES];
+        header[0] = MAZE_CHUNK;
+        int headerLength = putVarInt(header, 1, offset);
+        headerLength = putVarInt(header, headerLength, length);
+        headerLength = putVarInt(header, headerLength, encoded.length);
+        byte[] chunk = Arrays.copyOf(header, headerLength + encoded.length);
+        System.arraycopy(encoded, 0, chunk, headerLength, encoded.length);
+        return chunk;
+    }
+
+    // Largest REVEAL with this many cells: the count, and per cell a gap and a tile byte
+    public static int revealPacketSize(int count) {
+        return 1 + MAX_VARINT_BYTES + count * (MAX_VARINT_BYTES + 1);
+    }
+
+    /**
+     * Builds a REVEAL of the first count cells, which must be in increasing
+     * index order. cheeseCell is the index of the cell the cheese is on.
+     */
+    public static int encodeReveal(byte[] dst, MazeGrid grid, int[] cells, int count, int cheeseCell) {
+        dst[0] = REVEAL;
+        int offset = putVarInt(dst, 1, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            offset = putVarInt(dst, offset, cell - previous);
+            int row = cell / grid.getCols();
+            int col = cell % grid.getCols();
+            dst[offset++] = cell == cheeseCell ? 0b0110 : encodeTile(grid, row, col);
+            previous = cell;
+        }
+        return offset;
+    }
+
+    /**
+     * Builds a MAZE_SEED: the generator id from MazeGenerator.NAMES, the seed
+     * as 8 bytes and the checksum of the tiles as 4, both big endian.
+     */
+    public static byte[] encodeMazeSeed(int generatorId, long seed, int checksum) {
+        byte[] header = new byte[1 + MAX_VARINT_BYTES];
+        header[0] = MAZE_SEED;
+        int headerLength = putVarInt(header, 1, generatorId);
+        return ByteBuffer.allocate(headerLength + Long.BYTES + Integer.BYTES)
+                .put(header, 0, headerLength)
+                .putLong(seed)
+                .putInt(checksum)
+                .array();
+    }
+
+    // CRC32 of the tile bytes, sent with MAZE_SEED to catch a Client that rebuilt a different maze
+    public static int mazeChecksum(byte[] tiles) {
+        CRC32 crc = new CRC32();
+        crc.update(tiles);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Packs the maze into tile bytes, 4 bits per tile, with the cheese at
+     * cheeseCoords. What MAZE_CHUNK packets carry, and what the MAZE_SEED
+     * checksum is taken over.
+     */
+    public static byte[] encodeMazeTiles(MazeGrid mazeGrid, int[] cheeseCoords) {
+        final int cols = mazeGrid.getCols();
+        final int MAZE_SIZE = mazeGrid.getRows() * cols;
+        final int PACKET_SIZE = mazeTileBytes(mazeGrid.getRows(), cols); // 4 bits per tile
+        byte[] mazePacket = new byte[PACKET_SIZE];
+        // Process each tile in the maze
+        Log.debug(() -> "Processing maze");
+        for (int i = 0; i < MAZE_SIZE; i++) {
+            int row = i / cols;
+            int col = i % cols;
+
+            // Encode the tile based on its type
+            byte tileEncoding = encodeTile(mazeGrid, row, col);
+
+            // Pack two tiles into each byte
+            int byteIndex = i / 2;
+            if (i % 2 == 0) {
+                // First tile goes in the upper 4 bits
+                mazePacket[byteIndex] = (byte) ((tileEncoding << 4) & 0b11110000);
+            } else {
+                // Second tile goes in the lower 4 bits
+                mazePacket[byteIndex] |= (byte) (tileEncoding & 0b00001111);
+            }
+        }
+
+        if (cheeseCoords[0] >= 0 && cheeseCoords[1] >= 0) {
+            int cheeseR = cheeseCoords[0];
+            int cheeseC = cheeseCoords[1];
+            int tileIndex = (cheeseR * cols) + cheeseC;
+            int byteIndex = tileIndex / 2;
+
+            byte temp = mazePacket[byteIndex]; // Get existing byte
+
+            if (tileIndex % 2 == 0) {
+                // Cheese in upper 4 bits, preserve lower 4 bits
+                mazePacket[byteIndex] = (byte) ((0b0110 << 4) | (temp & 0b00001111));
+            } else {
+                // Cheese in lower 4 bits, preserve upper 4 bits
+                mazePacket[byteIndex] = (byte) ((temp & 0b11110000) | 0b0110);
+            }
+        } else {
+            throw new IllegalStateException("No cheese");
+        }
+        return mazePacket;
+    }
+
+    // Encodes the tile into 4-bit. Players are not part of the grid (codes 0b0111 + id), clients start
+    // everyone in their corners
+    private static byte encodeTile(MazeGrid mazeGrid, int row, int col) {
+        if (!mazeGrid.isPassable(row, col)) {
+            return (byte) 0b0000; // Wall
+        } else {
+            return (byte) 0b0001; // Floor
+        }
+    }
+
+    // Bytes taken by a maze of this size with two tiles per byte
+    public static int mazeTileBytes(int rows, int cols) {
+        return (int) (((long) rows * cols + 1) / 2);
+    }
+}
@@ -12,6 +12,7 @@ import javafx.scene.control.Button;
 import javafx.scene.image.Image;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
@@ -81,11 +82,14 @@ public class UI extends Application implements ClientEventListener {
             // Create a background thread for connection
             new Thread(() -> {
                 try {
+                    maze = client.setupConnection();
+                    if (maze == null) {
+                        throw new IOException("No maze from the server");
+                    }
                     // Switch back to UI thread for UI updates
                     Platform.runLater(() -> {
                         setupGameScene();
                     });
-                    maze = client.setupConnection();
                 } catch (Exception e2) {
                     e2.printStackTrace();
 
@@ -150,9 +154,9 @@ public class UI extends Application implements ClientEventListener {
         imgDark = loadImage("undiscovered.jpeg");
 
         // Get maze size from Maze class
-        MazeObject[][] grid = maze.getMaze();
-        int rows = grid.length;
-        int cols = grid[0].length;
+        MazeGrid grid = maze.getGrid();
+        int rows = grid.getRows();
+        int cols = grid.getCols();
 
         // Canvas size based on maze dimensions
         Canvas canvas = new Canvas(cols * TILE_SIZE, rows * TILE_SIZE);
@@ -198,6 +202,16 @@ public class UI extends Application implements ClientEventListener {
         drawBoard(gc);
     }
 
+    @Override
+    public void onMazeChunk(int firstRow, int lastRow) {
+        Platform.runLater(() -> {
+            // Chunks that land before the game scene exists are drawn with the rest of the board
+            if (gc != null) {
+                drawRows(gc, firstRow, lastRow);
+            }
+        });
+    }
+
     @Override
     public void onPlayerWin(int playerID) {
         System.out.println("UI: Player " + playerID + "'s win received!\n");
@@ -207,17 +221,20 @@ public class UI extends Application implements ClientEventListener {
     }
 
     private void drawBoard(GraphicsContext gc) {
-        MazeObject[][] grid = maze.getMaze();
+        drawRows(gc, 0, maze.getGrid().getRows() - 1);
+    }
 
-        for (int row = 0; row < grid.length; row++) {
-            for (int col = 0; col < grid[row].length; col++) {
-                MazeObject obj = grid[row][col];
+    // Redraws the tiles of rows firstRow to lastRow, then the cheese and players on top
+    private void drawRows(GraphicsContext gc, int firstRow, int lastRow) {
+        MazeGrid grid = maze.getGrid();
 
-                if (!obj.isVisible()) {
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = 0; col < grid.getCols(); col++) {
+                if (!grid.isVisible(row, col)) {
                     drawImage(gc, imgDark, row, col);
 
-                } else if (!obj.isPassable()) {
-                    Image wallImage = getCachedImage(obj.getImageFilePath());
+                } else if (!grid.isPassable(row, col)) {
+                    Image wallImage = getCachedImage(grid.getImageFilePath(row, col));
                     drawImage(gc, wallImage, row, col);
                 } else {
                     drawImage(gc, imgFloor, row, col);
@@ -225,11 +242,11 @@ public class UI extends Application implements ClientEventListener {
             }
         }
 
-        // Cheese is always drawn, regardless of visibility
+        // Cheese is always drawn, regardless of visibility, once its chunk has arrived
         Cheese cheese = maze.getCheese();
-        int cheeseRow = cheese.getRow();
-        int cheeseCol = cheese.getCol();
-        drawImage(gc, imgCheese, cheeseRow, cheeseCol);
+        if (cheese != null) {
+            drawImage(gc, imgCheese, cheese.getRow(), cheese.getCol());
+        }
 
         // Player is also always drawn
         for (Player p : maze.getPlayers()) {
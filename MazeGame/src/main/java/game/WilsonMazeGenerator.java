@@ -0,0 +1,125 @@
+package game;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Wilson's algorithm: starting from a tree of one cell, take a random walk
+ * from a cell outside the tree until it hits the tree, then add the walk's
+ * path with its loops erased. The result is a uniform spanning tree, every
+ * possible maze is equally likely. Walks only remember the last direction
+ * they left each cell in (a byte per cell), which erases loops for free.
+ *
+ * Early walks are long because the tree is small, so this is the slowest
+ * engine on big boards.
+ */
+public final class WilsonMazeGenerator {
+    private static final byte RIGHT = 0;
+    private static final byte LEFT = 1;
+    private static final byte DOWN = 2;
+    private static final byte UP = 3;
+
+    private final MazeGrid grid;
+    private final RandomGenerator random;
+    // Lattice size: cell (i, j) of the lattice is grid cell (2i + 1, 2j + 1)
+    private final int height;
+    private final int width;
+    private final long[] inTree;
+    private final byte[] exit;
+
+    private WilsonMazeGenerator(int rows, int cols, RandomGenerator random) {
+        this.grid = new MazeGrid(rows, cols);
+        this.random = random;
+        this.height = (rows - 1) / 2;
+        this.width = (cols - 1) / 2;
+        this.inTree = new long[(height * width + 63) >>> 6];
+        this.exit = new byte[height * width];
+    }
+
+    public static MazeGrid build(int rows, int cols, RandomGenerator random) {
+        GridMazeBuilder.checkSize("WilsonMazeGenerator", rows, cols);
+        WilsonMazeGenerator generator = new WilsonMazeGenerator(rows, cols, random);
+        GridMazeBuilder.openCorners(generator.grid);
+        generator.growTree();
+        GridMazeBuilder.randomlyRemoveWalls(generator.grid, random);
+        return generator.grid;
+    }
+
+    private void growTree() {
+        int cells = height * width;
+        // (1,1) is starting location of player
+        addToTree(0);
+
+        for (int start = 1; start < cells; start++) {
+            if (isInTree(start)) {
+                continue;
+            }
+            // Walk until the tree is hit, each cell keeps the direction the walk last left it in
+            int cell = start;
+            while (!isInTree(cell)) {
+                byte direction = randomDirection(cell);
+                exit[cell] = direction;
+                cell = neighbour(cell, direction);
+            }
+            // Follow the remembered directions from the start, which skips every loop
+            cell = start;
+            while (!isInTree(cell)) {
+                addToTree(cell);
+                int next = neighbour(cell, exit[cell]);
+                grid.openAt((toGridIndex(cell) + toGridIndex(next)) >>> 1);
+                cell = next;
+            }
+        }
+    }
+
+    private byte randomDirection(int cell) {
+        int row = cell / width;
+        int col = cell - row * width;
+        while (true) {
+            byte direction = (byte) random.nextInt(4);
+            switch (direction) {
+                case RIGHT -> {
+                    if (col < width - 1) {
+                        return direction;
+                    }
+                }
+                case LEFT -> {
+                    if (col > 0) {
+                        return direction;
+                    }
+                }
+                case DOWN -> {
+                    if (row < height - 1) {
+                        return direction;
+                    }
+                }
+                case UP -> {
+                    if (row > 0) {
+                        return direction;
+                    }
+                }
+            }
+        }
+    }
+
+    private int neighbour(int cell, byte direction) {
+        return switch (direction) {
+            case RIGHT -> cell + 1;
+            case LEFT -> cell - 1;
+            case DOWN -> cell + width;
+            default -> cell - width;
+        };
+    }
+
+    private void addToTree(int cell) {
+        inTree[cell >>> 6] |= 1L << cell;
+        grid.openAt(toGridIndex(cell));
+    }
+
+    private boolean isInTree(int cell) {
+        return (inTree[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private int toGridIndex(int cell) {
+        return grid.index(2 * (cell / width) + 1, 2 * (cell % width) + 1);
+    }
+}
@@ -0,0 +1,83 @@
+package server;
+
+import game.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Reads operator commands from the server's stdin. This is the on-demand way
+ * to look at match state now that nothing is printed per move:
+ * "stats", "dump", "level debug|info|warn|error" and "help".
+ */
+final class AdminConsole implements Runnable {
+    private final Lobby lobby;
+
+    AdminConsole(Lobby lobby) {
+        this.lobby = lobby;
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "admin-console");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                handle(line.trim());
+            }
+        } catch (IOException e) {
+            Log.warn("Admin console stopped: " + e.getMessage());
+        }
+    }
+
+    private void handle(String command) {
+        if (command.isEmpty()) {
+            return;
+        }
+        String[] parts = command.split("\\s+");
+        switch (parts[0].toLowerCase()) {
+            case "stats" -> printStats();
+            case "dump" -> dumpMazes();
+            case "level" -> {
+                if (parts.length > 1) {
+                    Log.setLevel(Log.parseLevel(parts[1]));
+                }
+                Log.info("Log level is " + Log.getLevel());
+            }
+            case "help" -> Log.info("Commands: stats, dump, level <debug|info|warn|error>, help");
+            default -> Log.info("Unknown command \"" + command + "\", try help");
+        }
+    }
+
+    private void printStats() {
+        StringBuilder out = new StringBuilder();
+        out.append("Players waiting in lobby: ").append(lobby.getWaitingCount()).append('\n');
+        out.append("Matches running: ").append(lobby.getActiveRooms().size()).append('\n');
+        out.append(lobby.getTimeToMatch()).append('\n');
+        out.append(lobby.getMazePool()).append('\n');
+        for (MatchRoom room : lobby.getActiveRooms()) {
+            out.append("Room ").append(room.getRoomId()).append(' ').append(room.getMoveLatency()).append('\n');
+            out.append("Room ").append(room.getRoomId()).append(' ').append(room.describeDroppedInput()).append('\n');
+            if (room.isTicking()) {
+                out.append("Room ").append(room.getRoomId()).append(' ').append(room.describeTicks()).append('\n');
+            }
+        }
+        out.append("Log lines dropped: ").append(Log.getDroppedCount());
+        Log.info(out.toString());
+    }
+
+    private void dumpMazes() {
+        if (lobby.getActiveRooms().isEmpty()) {
+            Log.info("No matches running");
+        }
+        for (MatchRoom room : lobby.getActiveRooms()) {
+            Log.info("Room " + room.getRoomId() + ":\n" + room.renderMaze());
+        }
+    }
+}
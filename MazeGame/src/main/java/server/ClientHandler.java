@@ -0,0 +1,356 @@
+package server;
+
+import game.Log;
+import game.PlayerMove;
+import game.MazeCodec;
+import game.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One connected player as seen by the match logic. The match only needs to
+ * send packets to a player and know whether they are still there; how the
+ * bytes travel is left to the transport (StreamClientHandler or
+ * NioClientHandler).
+ *
+ * Outgoing packets go through a bounded queue that the transport's writer
+ * drains on its own thread, so a client with a full send window never blocks
+ * the game loop. What happens when the queue is full is decided by
+ * ServerConfig.OUTBOUND_OVERFLOW.
+ */
+abstract class ClientHandler {
+    protected volatile int playerId;
+    // Agreed on during the handshake, see Protocol
+    protected volatile int protocolVersion = Protocol.V1;
+    // How this client's maze chunks are encoded, only ever not RAW from protocol v3 on
+    protected volatile MazeCodec mazeCodec = MazeCodec.RAW;
+    // Whether the client can rebuild the maze from MAZE_SEED
+    protected volatile boolean seedMazes = false;
+    // Whether the client can play with only the revealed cells, learning them from REVEAL
+    protected volatile boolean fog = false;
+    // Whether the client's moves carry a sequence number that is acknowledged with ACK
+    protected volatile boolean seqMoves = false;
+    // The match this client has been seated in
+    protected volatile MatchRoom room;
+
+    // Guards outbound and committed. A lock rather than a monitor so writers on
+    // virtual threads unmount while they wait on outboundReady
+    protected final ReentrantLock outboundLock = new ReentrantLock();
+    protected final Condition outboundReady = outboundLock.newCondition();
+    private final List<byte[]> outbound = new ArrayList<>();
+    // Only the first committed packets may be written, the rest belong to the cycle still being built
+    private int committed = 0;
+    private long droppedPackets = 0;
+
+    protected volatile boolean closing = false;
+    protected volatile boolean closed = false;
+    private final AtomicBoolean lossReported = new AtomicBoolean(false);
+    // Set while this client is waiting in the lobby for a match
+    private volatile Lobby lobby;
+    private volatile long joinedLobbyAt;
+
+    // Heartbeat bookkeeping, in System.nanoTime()
+    private volatile long lastReceived = System.nanoTime();
+    private volatile long lastPing = 0;
+
+    ClientHandler(int playerId) {
+        this.playerId = playerId;
+    }
+
+    /**
+     * Tells the transport's writer that committed packets are waiting.
+     */
+    protected abstract void signalWriter();
+
+    /**
+     * Closes the connection straight away, dropping anything still queued.
+     * Implementations must call reportClosed().
+     */
+    abstract void closeNow();
+
+    // Lets the room, or the lobby if no match has been formed yet, know this client is gone, once
+    protected final void reportClosed() {
+        if (!lossReported.compareAndSet(false, true)) {
+            return;
+        }
+        MatchRoom room = this.room;
+        if (room != null) {
+            room.onClientLost(this);
+        } else if (lobby != null) {
+            lobby.leave(this);
+        }
+    }
+
+    // Called by the transports whenever anything arrives from this client
+    void markReceived() {
+        lastReceived = System.nanoTime();
+    }
+
+    long getLastReceived() {
+        return lastReceived;
+    }
+
+    void markPinged(long now) {
+        lastPing = now;
+    }
+
+    long getLastPing() {
+        return lastPing;
+    }
+
+    abstract String getAddress();
+
+    /**
+     * Queues a packet and hands it to the writer straight away.
+     *
+     * @param packet The bytes to send
+     * @throws IOException If the connection is already gone
+     */
+    void send(byte[] packet) throws IOException {
+        if (isClosed()) {
+            throw new IOException("Connection to client " + playerId + " is closed");
+        }
+        queue(packet);
+        flush();
+    }
+
+    /**
+     * Adds a copy of a packet to this cycle's batch. Nothing is written until
+     * flush(), so all packets of a cycle leave in a single write.
+     */
+    void queue(byte[] packet) {
+        queue(packet, packet.length);
+    }
+
+    // Same as queue(byte[]) for a packet that only fills the first length bytes of the array
+    void queue(byte[] packet, int length) {
+        boolean overflow = false;
+        outboundLock.lock();
+        try {
+            if (outbound.size() < ServerConfig.OUTBOUND_CAPACITY) {
+                outbound.add(Arrays.copyOf(packet, length));
+            } else if (ServerConfig.OUTBOUND_OVERFLOW == ServerConfig.OverflowPolicy.DROP_SUPERSEDED
+                    && replaceSupersededMove(packet, length)) {
+                droppedPackets++;
+            } else {
+                overflow = true;
+            }
+        } finally {
+            outboundLock.unlock();
+        }
+        if (overflow && !closed) {
+            Log.warn("Client " + playerId + " outbound queue full, disconnecting");
+            closeNow();
+        }
+    }
+
+    /**
+     * Positions are absolute, so a queued move for the same player that has
+     * not been written yet is out of date and can be overwritten in place.
+     *
+     * @return True if the packet replaced an older one
+     */
+    private boolean replaceSupersededMove(byte[] packet, int length) {
+        int movedPlayer = getMovedPlayer(packet, length);
+        if (movedPlayer < 0) {
+            return false;
+        }
+        for (int i = outbound.size() - 1; i >= 0; i--) {
+            byte[] queued = outbound.get(i);
+            if (getMovedPlayer(queued, queued.length) == movedPlayer) {
+                if (queued.length == length) {
+                    System.arraycopy(packet, 0, queued, 0, length);
+                } else {
+                    // Version 2 moves grow with the coordinates
+                    outbound.set(i, Arrays.copyOf(packet, length));
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The player a queued move packet is about, or -1 if it is not a move
+    private int getMovedPlayer(byte[] packet, int length) {
+        if (protocolVersion == Protocol.V1) {
+            boolean move = length == 4 && ((packet[0] >> 5) & 0b111) == 0b010;
+            return move ? (packet[0] >> 3) & 0b11 : -1;
+        }
+        // Shorter packets starting with the same byte value are the handshake reply
+        boolean move = length >= 4 && packet[0] == Protocol.MOVE;
+        return move ? Protocol.getVarInt(packet, 1) : -1;
+    }
+
+    // Makes everything queued so far visible to the writer
+    void flush() {
+        outboundLock.lock();
+        try {
+            if (committed == outbound.size()) {
+                return;
+            }
+            committed = outbound.size();
+        } finally {
+            outboundLock.unlock();
+        }
+        signalWriter();
+    }
+
+    /**
+     * Moves every committed packet into dst, growing it if needed. Called by
+     * the writer.
+     *
+     * @param dst A buffer in write mode
+     * @return dst, or a larger copy of it
+     */
+    protected ByteBuffer takeCommitted(ByteBuffer dst) {
+        outboundLock.lock();
+        try {
+            int bytes = 0;
+            for (int i = 0; i < committed; i++) {
+                bytes += outbound.get(i).length;
+            }
+            if (dst.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(dst.capacity() * 2, dst.position() + bytes));
+                dst.flip();
+                bigger.put(dst);
+                dst = bigger;
+            }
+            for (int i = 0; i < committed; i++) {
+                dst.put(outbound.get(i));
+            }
+            outbound.subList(0, committed).clear();
+            committed = 0;
+        } finally {
+            outboundLock.unlock();
+        }
+        return dst;
+    }
+
+    protected boolean hasCommitted() {
+        outboundLock.lock();
+        try {
+            return committed > 0;
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    long getDroppedPackets() {
+        outboundLock.lock();
+        try {
+            return droppedPackets;
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    boolean isClosed() {
+        return closed || closing;
+    }
+
+    /**
+     * Closes once everything already queued has been written, so packets such
+     * as the game win are not lost when a match is cleaned up.
+     */
+    void close() {
+        closing = true;
+        signalWriter();
+    }
+
+    public int getId() {
+        return playerId;
+    }
+
+    void setId(int playerId) {
+        this.playerId = playerId;
+    }
+
+    int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    MazeCodec getMazeCodec() {
+        return mazeCodec;
+    }
+
+    void setMazeCodec(MazeCodec mazeCodec) {
+        this.mazeCodec = mazeCodec;
+    }
+
+    boolean acceptsSeedMazes() {
+        return seedMazes;
+    }
+
+    void setSeedMazes(boolean seedMazes) {
+        this.seedMazes = seedMazes;
+    }
+
+    boolean acceptsFog() {
+        return fog;
+    }
+
+    void setFog(boolean fog) {
+        this.fog = fog;
+    }
+
+    boolean numbersMoves() {
+        return seqMoves;
+    }
+
+    void setSeqMoves(boolean seqMoves) {
+        this.seqMoves = seqMoves;
+    }
+
+    void joinLobby(Lobby lobby) {
+        this.lobby = lobby;
+        lobby.join(this);
+    }
+
+    void markJoinedLobby(long now) {
+        joinedLobbyAt = now;
+    }
+
+    long getJoinedLobbyAt() {
+        return joinedLobbyAt;
+    }
+
+    MatchRoom getRoom() {
+        return room;
+    }
+
+    void setRoom(MatchRoom room) {
+        this.room = room;
+    }
+
+    // Pongs answer the heartbeat's pings and only matter for markReceived(). Version 1 only, and optional
+    // there: older version 1 Clients never send them, so the heartbeat does not time version 1 clients out
+    static boolean isPongPacket(byte[] input) {
+        return ((input[0] >> 5) & 0b00000111) == 0b111;
+    }
+
+    // Decodes a 3-byte version 1 move packet sent by this client
+    PlayerMove processMovePacket(byte[] input) {
+        int token = (input[0] >> 5) & 0b00000111;
+        if (token != 0b010) {
+            throw new IllegalArgumentException("Invalid move token: " + token);
+        }
+        int playerId = ((input[0] >> 3) & 0b00000011);
+        int newRow = ((input[0] & 0b00000111) << 2) | ((input[1] >> 6) & 0b00000011);
+        int newCol = ((input[1] >> 1) & 0b00011111);
+        if (playerId != this.playerId) {
+            throw new IllegalStateException("Invalid player id: " + playerId);
+        }
+        return new PlayerMove(playerId, newRow, newCol);
+    }
+}
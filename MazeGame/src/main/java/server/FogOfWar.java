@@ -0,0 +1,85 @@
+package server;
+
+import game.MazeGrid;
+
+/**
+ * Which cells each player has been shown, one bitset per player. A cell is
+ * revealed by standing on it or next to it. The outer border is always
+ * visible, so every bitset starts with it set and it is never sent.
+ *
+ * Revealing only looks at the 3x3 block around the player and returns the
+ * cells that were not set yet, so a move costs the same on any board size
+ * and the REVEAL packet built from it holds only what is new.
+ */
+final class FogOfWar {
+    // Most cells one call to reveal() can return
+    static final int MAX_REVEALED = 9;
+
+    private final MazeGrid grid;
+    private final long[][] revealed;
+
+    FogOfWar(MazeGrid grid, int numPlayers) {
+        this.grid = grid;
+        this.revealed = new long[numPlayers][];
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        for (int playerId = 0; playerId < numPlayers; playerId++) {
+            long[] bits = new long[(int) (((long) rows * cols + 63) >>> 6)];
+            for (int col = 0; col < cols; col++) {
+                set(bits, grid.index(0, col));
+                set(bits, grid.index(rows - 1, col));
+            }
+            for (int row = 1; row < rows - 1; row++) {
+                set(bits, grid.index(row, 0));
+                set(bits, grid.index(row, cols - 1));
+            }
+            revealed[playerId] = bits;
+        }
+    }
+
+    /**
+     * Reveals the cells around (row, col) to a player.
+     *
+     * @param cells Gets the cells that were newly revealed, in increasing index order
+     * @return How many cells were written to cells, at most MAX_REVEALED
+     */
+    int reveal(int playerId, int row, int col, int[] cells) {
+        long[] bits = revealed[playerId];
+        int count = 0;
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = col - 1; c <= col + 1; c++) {
+                if (!grid.inBounds(r, c)) {
+                    continue;
+                }
+                int cell = grid.index(r, c);
+                if (!isSet(bits, cell)) {
+                    set(bits, cell);
+                    cells[count++] = cell;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Marks one cell as shown to a player, e.g. the cell under the cheese.
+     *
+     * @return False if it already was
+     */
+    boolean revealCell(int playerId, int cell) {
+        long[] bits = revealed[playerId];
+        if (isSet(bits, cell)) {
+            return false;
+        }
+        set(bits, cell);
+        return true;
+    }
+
+    private static boolean isSet(long[] bits, int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private static void set(long[] bits, int cell) {
+        bits[cell >>> 6] |= 1L << cell;
+    }
+}
@@ -0,0 +1,71 @@
+package server;
+
+import game.Log;
+import game.Protocol;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an eye on every client in a running match from one scheduler thread.
+ * A client that has been quiet for an interval gets a ping, which it answers
+ * with a pong; a client that stays quiet past the timeout is closed, and
+ * closing it tells its room. The game loop itself never pings anyone.
+ *
+ * Version 1 clients are pinged but never timed out: Clients from before the
+ * heartbeat ignore the ping and stay quiet whenever their player stands still.
+ * A dead version 1 connection is noticed when a write to it fails instead,
+ * and the pings make sure something is written to it.
+ */
+final class Heartbeat {
+    private static final byte[] PING_PACKET_V1 = { (byte) 0b11100000, 0, 0, 0 }; // Token 0b111
+    private static final byte[] PING_PACKET = { Protocol.PING };
+
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final Set<ClientHandler> watched = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    Heartbeat(long intervalMs, long timeoutMs) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        scheduler.scheduleAtFixedRate(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void watch(ClientHandler client) {
+        client.markReceived();
+        watched.add(client);
+    }
+
+    void unwatch(ClientHandler client) {
+        watched.remove(client);
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        for (ClientHandler client : watched) {
+            if (client.isClosed()) {
+                watched.remove(client);
+                continue;
+            }
+            long idle = now - client.getLastReceived();
+            if (idle >= timeoutNanos && client.getProtocolVersion() != Protocol.V1) {
+                Log.warn("Client " + client.getId() + " timed out after "
+                        + TimeUnit.NANOSECONDS.toMillis(idle) + " ms without traffic");
+                watched.remove(client);
+                client.closeNow();
+            } else if (idle >= intervalNanos && now - client.getLastPing() >= intervalNanos) {
+                client.markPinged(now);
+                client.queue(client.getProtocolVersion() == Protocol.V1 ? PING_PACKET_V1 : PING_PACKET);
+                client.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+/**
+ * Collects latency samples into power-of-two microsecond buckets so that
+ * percentiles can be reported without storing every sample. Recording is
+ * cheap enough to do for every move.
+ */
+class LatencyStats {
+    private static final int NUM_BUCKETS = 32;
+
+    private final String name;
+    private final long[] buckets = new long[NUM_BUCKETS];
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    LatencyStats(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        buckets[bucketOf(nanos / 1000)]++;
+    }
+
+    synchronized long getCount() {
+        return count;
+    }
+
+    synchronized double getMeanMicros() {
+        return count == 0 ? 0 : totalNanos / 1000.0 / count;
+    }
+
+    synchronized double getMaxMicros() {
+        return maxNanos / 1000.0;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile, precise to the bucket
+     * it falls in.
+     *
+     * @param percentile Between 0 and 100
+     * @return The latency in microseconds
+     */
+    synchronized long getPercentileMicros(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return Math.min(1L << i, (long) Math.ceil(getMaxMicros()));
+            }
+        }
+        return (long) Math.ceil(getMaxMicros());
+    }
+
+    // Bucket i holds values up to 2^i microseconds
+    private static int bucketOf(long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: n=%d mean=%.1fus p50<=%dus p99<=%dus max=%.1fus", name, count, getMeanMicros(),
+                getPercentileMicros(50), getPercentileMicros(99), getMaxMicros());
+    }
+}
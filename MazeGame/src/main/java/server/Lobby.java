@@ -0,0 +1,140 @@
+package server;
+
+import game.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where authenticated players wait for a match. Players are added to a
+ * lock-free queue from any transport thread, and whichever thread brings the
+ * count up to four pulls those four out and starts their match. Only one
+ * thread forms matches at a time, the others leave it to that one instead of
+ * waiting, so a burst of connections only costs queue inserts.
+ */
+final class Lobby {
+    private final ConcurrentLinkedDeque<ClientHandler> waiting = new ConcurrentLinkedDeque<>();
+    // Players in the queue. Counted after the add and uncounted after a successful
+    // poll or remove, so a player is only ever taken out of the count once
+    private final AtomicInteger unclaimed = new AtomicInteger();
+    // Set while a thread is forming matches
+    private final AtomicBoolean forming = new AtomicBoolean(false);
+    private final AtomicInteger nextRoomId = new AtomicInteger();
+    // Matches that are being played right now, for the admin console
+    private final ConcurrentHashMap<Integer, MatchRoom> activeRooms = new ConcurrentHashMap<>();
+    private final Heartbeat heartbeat;
+    private final Executor matchExecutor;
+    private final MazePool mazePool;
+    private final LatencyStats timeToMatch = new LatencyStats("time-to-match");
+
+    Lobby(Heartbeat heartbeat, Executor matchExecutor, MazePool mazePool) {
+        this.heartbeat = heartbeat;
+        this.matchExecutor = matchExecutor;
+        this.mazePool = mazePool;
+    }
+
+    // Adds a freshly authenticated player and starts a match if four are now waiting
+    void join(ClientHandler client) {
+        client.markJoinedLobby(System.nanoTime());
+        waiting.add(client);
+        unclaimed.incrementAndGet();
+        formMatches();
+    }
+
+    // Called when a waiting player disconnects before being put in a match
+    void leave(ClientHandler client) {
+        if (waiting.remove(client)) {
+            unclaimed.decrementAndGet();
+            Log.info("Client " + client.getAddress() + " left the lobby");
+        }
+    }
+
+    int getWaitingCount() {
+        return unclaimed.get();
+    }
+
+    Collection<MatchRoom> getActiveRooms() {
+        return activeRooms.values();
+    }
+
+    LatencyStats getTimeToMatch() {
+        return timeToMatch;
+    }
+
+    MazePool getMazePool() {
+        return mazePool;
+    }
+
+    private void formMatches() {
+        // Checked again after forming, a player that joined meanwhile left its match to us
+        while (unclaimed.get() >= MatchRoom.numPlayers && forming.compareAndSet(false, true)) {
+            try {
+                while (unclaimed.get() >= MatchRoom.numPlayers) {
+                    List<ClientHandler> players = takePlayers();
+                    if (players == null) {
+                        // A player is halfway out of the lobby, the count will be right again in a moment
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    startMatch(players);
+                }
+            } finally {
+                forming.set(false);
+            }
+        }
+    }
+
+    /**
+     * Polls the first four players still connected, or puts the ones it got
+     * back at the front of the line and returns null if there are not four.
+     */
+    private List<ClientHandler> takePlayers() {
+        List<ClientHandler> players = new ArrayList<>(MatchRoom.numPlayers);
+        while (players.size() < MatchRoom.numPlayers) {
+            ClientHandler client = waiting.pollFirst();
+            if (client == null) {
+                break;
+            }
+            unclaimed.decrementAndGet();
+            // A closed player's leave() will not find it in the queue any more, so it is simply dropped
+            if (!client.isClosed()) {
+                players.add(client);
+            }
+        }
+        if (players.size() == MatchRoom.numPlayers) {
+            return players;
+        }
+        // They keep their place ahead of anyone who joined later
+        for (int i = players.size() - 1; i >= 0; i--) {
+            waiting.addFirst(players.get(i));
+            unclaimed.incrementAndGet();
+        }
+        return null;
+    }
+
+    private void startMatch(List<ClientHandler> players) {
+        long now = System.nanoTime();
+        for (ClientHandler client : players) {
+            timeToMatch.record(now - client.getJoinedLobbyAt());
+        }
+        int roomId = nextRoomId.getAndIncrement();
+        Log.info("Room " + roomId + " formed, " + getWaitingCount() + " still waiting. " + timeToMatch);
+        // Taking the maze is quick when the pool has one, but may mean building it, so keep it off the
+        // transport thread
+        matchExecutor.execute(() -> {
+            MatchRoom room = new MatchRoom(roomId, players, heartbeat, mazePool);
+            activeRooms.put(roomId, room);
+            try {
+                room.play();
+            } finally {
+                activeRooms.remove(roomId);
+            }
+        });
+    }
+}
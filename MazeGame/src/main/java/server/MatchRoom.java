@@ -0,0 +1,813 @@
+package server;
+
+import game.Log;
+import game.PlayerMove;
+import game.Maze;
+import game.MazeGrid;
+import game.Player;
+import game.Protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A single match: its own maze, move queues, players and scores. Rooms share
+ * nothing with each other, so the server can run as many of them at once as
+ * it has players for.
+ *
+ * Each player's moves wait in their own bounded queue and pass a rate limit
+ * first, and the game loop takes one move from each player in turn. A client
+ * that floods the server fills only its own queue, the other players' moves
+ * are still handled in the next cycle. Dropped moves are counted and the
+ * sender is told where it really is, see resyncPlayer().
+ *
+ * By default every move is handled as soon as it arrives. With maze.tick.ms
+ * set the room runs a fixed timestep instead: each tick takes every queued
+ * move, applies them in the order their readers queued them, with player id
+ * breaking ties, and sends each player's resulting position once at the end
+ * of the tick. Arrival times come from the clock, so a replay with the same
+ * maze.seed can still order a tick's moves differently.
+ */
+class MatchRoom {
+    // Mutex stuff
+    static final int numPlayers = 4;
+    private final ReentrantLock movementLock;
+
+    private static final int CHEESE_TO_WIN = 3;
+    // Order the tick engine applies a tick's moves in. The sort is stable, so a
+    // player's own moves keep their order even if their timestamps are equal
+    private static final Comparator<PlayerMove> TICK_ORDER = Comparator.comparingLong(PlayerMove::getQueuedAt)
+            .thenComparingInt(PlayerMove::getPlayerId);
+    // No dropped move waiting for a resync, see resync
+    private static final int IN_SYNC = Integer.MIN_VALUE;
+
+    private final int roomId;
+    private final Heartbeat heartbeat;
+    private final ConcurrentHashMap<Integer, ClientHandler> clients = new ConcurrentHashMap<>();
+    // Moves waiting for the game loop, one bounded queue per player. Each client's
+    // reader decodes moves then queues them to its player's queue
+    private final List<ArrayBlockingQueue<PlayerMove>> inputs = new ArrayList<>(numPlayers);
+    // Move rate limit per player, only touched by that player's reader
+    private final TokenBucket[] inputRates;
+    // Released for every queued move and whenever the game loop has something else to do
+    private final Semaphore inputReady = new Semaphore(0);
+    // Player whose move is taken first in the next cycle, so no one is always first
+    private int firstPlayer = 0;
+    // Moves dropped per player because of the rate limit or a full queue
+    private final AtomicLongArray rateLimitedMoves = new AtomicLongArray(numPlayers);
+    private final AtomicLongArray overflowedMoves = new AtomicLongArray(numPlayers);
+    // Per player, the sequence number of the last dropped move (NO_SEQ for clients that
+    // do not number their moves) until the player has been resynced, IN_SYNC otherwise
+    private final AtomicIntegerArray resync = new AtomicIntegerArray(numPlayers);
+    // Clients that asked for the whole maze after a MAZE_SEED, handled by the game loop
+    private final Queue<ClientHandler> mazeRequests = new ConcurrentLinkedQueue<>();
+    private int[] cheeseCoords; // I've decided that it's fine and better to keep cheeseCoords
+    private final PreparedMaze preparedMaze;
+    private final Maze maze;
+    // Match state
+    private final int[] score = new int[numPlayers];
+    private final LatencyStats moveLatency;
+    // Reused for every outgoing packet, clients copy it into their own batch. Each
+    // event is encoded once per protocol version and clients get the one they speak
+    private final byte[] scratchPacket = new byte[4];
+    private final byte[] scratchPacketV2 = new byte[Protocol.MAX_PACKET_SIZE];
+    private int scratchLengthV2;
+    private final byte[] ackPacket = new byte[Protocol.MAX_PACKET_SIZE];
+    private static final byte[] START_SIGNAL = { (byte) 0b10100000 };
+    // What each player has been shown, null when no client plays in the fog
+    private final FogOfWar fog;
+    // Tick engine only: what the current tick has changed, sent once it is over
+    private final boolean ticking = ServerConfig.TICK_MS > 0;
+    private final boolean[] movedThisTick = new boolean[numPlayers];
+    private final boolean[] rejectedThisTick = new boolean[numPlayers];
+    private final int[] lastSeqThisTick = new int[numPlayers];
+    private final LatencyStats tickDuration = new LatencyStats("tick");
+    private volatile long tickOverruns = 0;
+    private final int[] revealedCells = new int[FogOfWar.MAX_REVEALED];
+    private final byte[] revealPacket = new byte[Protocol.revealPacketSize(FogOfWar.MAX_REVEALED)];
+
+    /**
+     * Sets states to starting defaults and seats the players the lobby matched,
+     * giving them player ids 0 to 3 in the order they joined. The maze comes
+     * from the pool when it has one of the right size.
+     */
+    MatchRoom(int roomId, List<ClientHandler> players, Heartbeat heartbeat, MazePool mazePool) {
+        this.roomId = roomId;
+        this.heartbeat = heartbeat;
+        this.moveLatency = new LatencyStats("queue-to-broadcast");
+        int rows = ServerConfig.MAZE_ROWS;
+        int cols = ServerConfig.MAZE_COLS;
+        if (players.stream().anyMatch(client -> client.getProtocolVersion() == Protocol.V1)
+                && (rows != Maze.NUM_OF_ROWS || cols != Maze.NUM_OF_COLUMNS)) {
+            Log.info("Room " + roomId + " has protocol v1 players, using the " + Maze.NUM_OF_ROWS + "x"
+                    + Maze.NUM_OF_COLUMNS + " board they expect");
+            rows = Maze.NUM_OF_ROWS;
+            cols = Maze.NUM_OF_COLUMNS;
+        }
+        preparedMaze = mazePool.take(rows, cols);
+        maze = preparedMaze.getMaze();
+        // Log the seed so the match can be replayed with -Dmaze.seed
+        Log.info("Room " + roomId + " maze seed " + maze.getSeed());
+        // Reset move queues
+        inputRates = new TokenBucket[numPlayers];
+        for (int playerId = 0; playerId < numPlayers; playerId++) {
+            inputs.add(new ArrayBlockingQueue<>(ServerConfig.INPUT_CAPACITY));
+            inputRates[playerId] = new TokenBucket(ServerConfig.INPUT_RATE, ServerConfig.INPUT_BURST);
+            resync.set(playerId, IN_SYNC);
+            lastSeqThisTick[playerId] = PlayerMove.NO_SEQ;
+        }
+        for (int playerId = 0; playerId < numPlayers; playerId++) {
+            ClientHandler client = players.get(playerId);
+            client.setId(playerId);
+            client.setRoom(this);
+            clients.put(playerId, client);
+        }
+        Log.info("Room " + roomId + " seated players " + clients.keySet());
+
+        // Create a new lock
+        movementLock = new ReentrantLock();
+
+        // The first cheese was placed when the maze was prepared
+        cheeseCoords = preparedMaze.getCheeseCoords();
+
+        if (ServerConfig.FOG != ServerConfig.FogMode.OFF && players.stream().anyMatch(ClientHandler::acceptsFog)) {
+            fog = new FogOfWar(maze.getGrid(), numPlayers);
+        } else {
+            fog = null;
+        }
+    }
+
+    int getRoomId() {
+        return roomId;
+    }
+
+    /**
+     * Called by a client's reader when the client could not rebuild the maze
+     * from its seed. The chunks are queued by the game loop, so they never
+     * land in the middle of a cycle's packets.
+     */
+    void requestMaze(ClientHandler client) {
+        if (isInFog(client)) {
+            // Would show it every cell it has not been near yet
+            Log.warn("Room " + roomId + ": client " + client.getId() + " asked for the maze while in the fog");
+            return;
+        }
+        Log.warn("Room " + roomId + ": client " + client.getId() + " could not rebuild the maze, sending all of it");
+        mazeRequests.add(client);
+        inputReady.release();
+    }
+
+    /**
+     * Used by the transports to hand decoded moves to the game loop. Only
+     * ever called by the reader of the player that sent the move. A move over
+     * the rate limit or that finds its player's queue full is dropped, and the
+     * game loop resyncs the player.
+     */
+    void queueMove(PlayerMove move) {
+        int playerId = move.getPlayerId();
+        long now = System.nanoTime();
+        move.setQueuedAt(now);
+        if (!inputRates[playerId].tryTake(now)) {
+            dropMove(move, rateLimitedMoves);
+        } else if (!inputs.get(playerId).offer(move)) {
+            dropMove(move, overflowedMoves);
+        } else {
+            inputReady.release();
+        }
+    }
+
+    private void dropMove(PlayerMove move, AtomicLongArray counter) {
+        int playerId = move.getPlayerId();
+        // Log the first drop and then every hundredth, a flooding client would fill the log otherwise
+        long dropped = counter.incrementAndGet(playerId);
+        if (dropped % 100 == 1) {
+            Log.warn("Room " + roomId + ": dropped move " + dropped + " from player " + playerId
+                    + (counter == rateLimitedMoves ? ", over the rate limit" : ", input queue full"));
+        }
+        resync.set(playerId, move.getSeq());
+        inputReady.release();
+    }
+
+    /**
+     * Called by a client when its connection is closed, from whichever thread
+     * noticed: its reader, its writer or the heartbeat.
+     */
+    void onClientLost(ClientHandler client) {
+        Log.warn("Room " + roomId + ": client " + client.getId() + " disconnected");
+        heartbeat.unwatch(client);
+        inputReady.release();
+    }
+
+    /**
+     * Runs the match from the first maze broadcast to the cleanup. Called on
+     * the server's match executor once the lobby has matched its players.
+     */
+    void play() {
+        Log.info(numPlayers + " players connected to room " + roomId + ".");
+
+        // Start the game
+        // Broadcast maze to clients
+        broadcastMazeToAllClients();
+
+        // The heartbeat pings idle clients and closes silent ones, which wakes this loop
+        for (ClientHandler client : clients.values()) {
+            heartbeat.watch(client);
+        }
+
+        Log.info("Room " + roomId + " match start...");
+        if (ticking) {
+            runTicks();
+            Log.info("Room " + roomId + " " + describeTicks());
+        } else {
+            runEvents();
+        }
+        Log.info("Room " + roomId + " " + moveLatency);
+        Log.info("Room " + roomId + " " + describeDroppedInput());
+        // Clean up
+        matchCleanup();
+    }
+
+    // Game loop - block until moves arrive, then process everything that is queued
+    private void runEvents() {
+        List<PlayerMove> batch = new ArrayList<>();
+        boolean gameActive = true;
+        while (gameActive) {
+            boolean woken;
+            try {
+                woken = inputReady.tryAcquire(ServerConfig.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (!anyClientConnected()) {
+                Log.info("Room " + roomId + ": all clients disconnected, ending match early");
+                break;
+            }
+            if (!woken) {
+                continue;
+            }
+
+            // Everything released so far is handled by this cycle
+            inputReady.drainPermits();
+            gameActive = processInputs(batch);
+            endCycle(batch, gameActive);
+        }
+    }
+
+    /**
+     * Game loop for the tick engine - wake up every maze.tick.ms and process
+     * what arrived since the last tick. A tick that runs late is counted as
+     * an overrun and the ticks it missed are skipped rather than run back to
+     * back.
+     */
+    private void runTicks() {
+        List<PlayerMove> batch = new ArrayList<>();
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(ServerConfig.TICK_MS);
+        long nextTick = System.nanoTime() + tickNanos;
+        boolean gameActive = true;
+        while (gameActive) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nextTick - System.nanoTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (!anyClientConnected()) {
+                Log.info("Room " + roomId + ": all clients disconnected, ending match early");
+                break;
+            }
+
+            long tickStart = System.nanoTime();
+            inputReady.drainPermits();
+            gameActive = processTick(batch);
+            endCycle(batch, gameActive);
+            long tickEnd = System.nanoTime();
+            tickDuration.record(tickEnd - tickStart);
+
+            nextTick += tickNanos;
+            if (tickEnd > nextTick) {
+                tickOverruns++;
+                nextTick = tickEnd + tickNanos - (tickEnd - nextTick) % tickNanos;
+            }
+        }
+    }
+
+    // Work every cycle ends with, whichever engine runs it
+    private void endCycle(List<PlayerMove> batch, boolean gameActive) {
+        if (gameActive) {
+            for (int playerId = 0; playerId < numPlayers; playerId++) {
+                resyncPlayer(playerId);
+            }
+        }
+        for (ClientHandler client; (client = mazeRequests.poll()) != null;) {
+            queueMazeChunks(client);
+        }
+        // Everything produced by this batch goes out in one write per client
+        flushAll();
+        long flushedAt = System.nanoTime();
+        for (PlayerMove move : batch) {
+            moveLatency.record(flushedAt - move.getQueuedAt());
+        }
+        batch.clear();
+    }
+
+    /**
+     * Processes the queued moves one player at a time, round-robin, until the
+     * queues are empty or the game is won.
+     *
+     * @param batch Gets the moves that were processed
+     * @return False once a move has won the game
+     */
+    private boolean processInputs(List<PlayerMove> batch) {
+        int start = firstPlayer;
+        firstPlayer = (firstPlayer + 1) % numPlayers;
+        boolean anyQueued = true;
+        while (anyQueued) {
+            anyQueued = false;
+            for (int i = 0; i < numPlayers; i++) {
+                PlayerMove move = inputs.get((start + i) % numPlayers).poll();
+                if (move == null) {
+                    continue;
+                }
+                anyQueued = true;
+                batch.add(move);
+                if (!processMove(move)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Processes every move queued since the last tick in TICK_ORDER, then
+     * sends what changed.
+     *
+     * @param batch Gets the moves that were processed
+     * @return False once a move has won the game
+     */
+    private boolean processTick(List<PlayerMove> batch) {
+        for (ArrayBlockingQueue<PlayerMove> input : inputs) {
+            input.drainTo(batch);
+        }
+        batch.sort(TICK_ORDER);
+        for (int i = 0; i < batch.size(); i++) {
+            if (!processMove(batch.get(i))) {
+                // The moves after the winning one are never processed
+                batch.subList(i + 1, batch.size()).clear();
+                return false;
+            }
+        }
+        sendTickState();
+        return true;
+    }
+
+    // Tick engine: remembers a processed move so its result is sent with the rest of the tick
+    private void recordTickMove(PlayerMove move, boolean rejected) {
+        int playerId = move.getPlayerId();
+        movedThisTick[playerId] = true;
+        if (move.getSeq() != PlayerMove.NO_SEQ) {
+            lastSeqThisTick[playerId] = move.getSeq();
+        } else if (rejected) {
+            // The mover has to be told too, it already moved itself
+            rejectedThisTick[playerId] = true;
+        }
+    }
+
+    /**
+     * Tick engine: one position per player that moved, and one ACK for the
+     * last numbered move of each player, however many moves the tick had.
+     */
+    private void sendTickState() {
+        Player[] players = maze.getPlayers();
+        for (int playerId = 0; playerId < numPlayers; playerId++) {
+            Player player = players[playerId];
+            if (movedThisTick[playerId]) {
+                broadcastPlayerMove(playerId, player.getRow(), player.getCol(),
+                        rejectedThisTick[playerId] ? -1 : playerId);
+            }
+            if (lastSeqThisTick[playerId] != PlayerMove.NO_SEQ) {
+                ClientHandler client = clients.get(playerId);
+                if (client != null) {
+                    client.queue(ackPacket,
+                            Protocol.encodeAck(ackPacket, lastSeqThisTick[playerId], player.getRow(), player.getCol()));
+                }
+            }
+            movedThisTick[playerId] = false;
+            rejectedThisTick[playerId] = false;
+            lastSeqThisTick[playerId] = PlayerMove.NO_SEQ;
+        }
+    }
+
+    /**
+     * Tells a player that had moves dropped where it really is, since its
+     * client already moved it. Clients that number their moves get an ACK of
+     * the last dropped move, which also clears it from their moves in flight;
+     * others get their own position the way a rejected move does.
+     */
+    private void resyncPlayer(int playerId) {
+        int seq = resync.getAndSet(playerId, IN_SYNC);
+        ClientHandler client = clients.get(playerId);
+        if (seq == IN_SYNC || client == null) {
+            return;
+        }
+        Player player = maze.getPlayers()[playerId];
+        if (seq != PlayerMove.NO_SEQ) {
+            client.queue(ackPacket, Protocol.encodeAck(ackPacket, seq, player.getRow(), player.getCol()));
+        } else {
+            encodePlayerMove(playerId, player.getRow(), player.getCol());
+            if (client.getProtocolVersion() == Protocol.V1) {
+                client.queue(scratchPacket);
+            } else {
+                client.queue(scratchPacketV2, scratchLengthV2);
+            }
+        }
+    }
+
+    /**
+     * Validates a single move and broadcasts the result.
+     *
+     * @return False once the move has won the game
+     */
+    private boolean processMove(PlayerMove move) {
+        Log.debug(() -> "Processing move from player " + move.getPlayerId());
+        // Validate and process move
+        // Update state of the maze
+        // Check for cheese and win
+        // If cheese eaten, place new cheese and do a cheese broadcast
+        // Etc
+
+        // If move is valid
+        // Change: Implemented
+        switch (validatePlayerMove(move)) {
+            // v for valid move
+            case ('v') -> {
+                if (ticking) {
+                    recordTickMove(move, false);
+                } else {
+                    broadcastPlayerMove(move.getPlayerId(), move.getRow(), move.getCol(), move.getPlayerId());
+                    acknowledgeMove(move, move.getRow(), move.getCol());
+                }
+                revealAround(move.getPlayerId());
+            }
+
+            // i for invalid move
+            case ('i') -> {
+                if (ticking) {
+                    recordTickMove(move, true);
+                    return true;
+                }
+                // Still must send the player's old move to indicate they haven't moved. A client that
+                // numbers its moves learns that from the ACK instead
+                Player player = maze.getPlayers()[move.getPlayerId()];
+                boolean acknowledged = acknowledgeMove(move, player.getRow(), player.getCol());
+                broadcastPlayerMove(move.getPlayerId(), player.getRow(), player.getCol(),
+                        acknowledged ? move.getPlayerId() : -1);
+            }
+
+            // c for cheese found => valid move
+            case ('c') -> {
+                Log.debug(() -> "Cheese collected");
+                cheeseCoords = maze.placeCheeseRandomly();
+                broadcastCheeseCollection(move.getPlayerId(), move.getRow(), move.getCol(), cheeseCoords[0],
+                        cheeseCoords[1]);
+                if (ticking) {
+                    // CHEESE has told everyone where the player is, only the ACK is left
+                    recordTickMove(move, false);
+                    movedThisTick[move.getPlayerId()] = false;
+                    rejectedThisTick[move.getPlayerId()] = false;
+                } else {
+                    acknowledgeMove(move, move.getRow(), move.getCol());
+                }
+                revealAround(move.getPlayerId());
+            }
+
+            // w for win => cheese found
+            case ('w') -> {
+                if (ticking) {
+                    // The tick's moves so far come before the win
+                    sendTickState();
+                }
+                broadcastGameWin(move.getPlayerId());
+                return false; // Game stops
+            }
+
+            default -> {
+                Log.error("ERROR PROCESSING USER MOVE");
+            }
+        }
+        return true;
+    }
+
+    // ASCII picture of the board for the admin console, taken under the movement lock so it is not torn
+    String renderMaze() {
+        movementLock.lock();
+        try {
+            return maze.renderMaze();
+        } finally {
+            movementLock.unlock();
+        }
+    }
+
+    /**
+     * Time from a move being queued by its client's reader until its result
+     * has been handed to every client.
+     */
+    LatencyStats getMoveLatency() {
+        return moveLatency;
+    }
+
+    // Tick durations and how many ticks ran over, for the admin console and the end of match log
+    String describeTicks() {
+        return tickDuration + " overruns=" + tickOverruns + " (tick " + ServerConfig.TICK_MS + "ms)";
+    }
+
+    boolean isTicking() {
+        return ticking;
+    }
+
+    // Moves dropped so far, per player, for the admin console and the cleanup log
+    String describeDroppedInput() {
+        StringBuilder out = new StringBuilder("dropped moves (rate limited/queue full):");
+        for (int playerId = 0; playerId < numPlayers; playerId++) {
+            out.append(' ').append(playerId).append('=').append(rateLimitedMoves.get(playerId)).append('/')
+                    .append(overflowedMoves.get(playerId));
+        }
+        return out.toString();
+    }
+
+    // Only looks at flags, the heartbeat and the transports do the actual detecting
+    private boolean anyClientConnected() {
+        for (ClientHandler client : clients.values()) {
+            if (!client.isClosed()) {
+                return true;
+            }
+        }
+        return false; // No clients connected or responsive
+    }
+
+    private void matchCleanup() {
+        Log.info("Room " + roomId + " match ended, cleaning up...");
+
+        for (ClientHandler client : clients.values()) {
+            try {
+                if (client.getDroppedPackets() > 0) {
+                    Log.info("Client " + client.getId() + " had " + client.getDroppedPackets()
+                            + " superseded packets dropped");
+                }
+                heartbeat.unwatch(client);
+                if (!client.isClosed()) {
+                    client.close();
+                }
+            } catch (Exception e) {
+                Log.error("Room " + roomId + " failed to close client " + client.getId(), e);
+            }
+        }
+
+        clients.clear();
+
+        Log.info("Room " + roomId + " clients cleaned up");
+    }
+
+    /*
+     * Return state of player move"
+     * 'v': Valid move
+     * 'i': Invalid move
+     * 'c': Cheese collected
+     * 'w': Third cheese collected => win
+     */
+    private char validatePlayerMove(PlayerMove move) {
+        Player currentPlayer = maze.getPlayers()[move.getPlayerId()];
+
+        // Lock mutex
+        movementLock.lock();
+
+        try {
+            // Version 2 coordinates are not limited to the board
+            if (!maze.getGrid().inBounds(move.getRow(), move.getCol())) {
+                return 'i';
+            }
+
+            // Check the place the player's trying to move to
+            boolean isCheese = move.getRow() == maze.getCheese().getRow() && move.getCol() == maze.getCheese().getCol();
+            if (isCheese) {
+                currentPlayer.addCheeseCount();
+                if (currentPlayer.getCheeseCount() == CHEESE_TO_WIN) {
+                    return 'w';
+                }
+
+                // Update player position internally
+                maze.movePlayer(move.getPlayerId(), move.getRow(), move.getCol());
+
+                return 'c';
+
+            } else if (!maze.getGrid().isPassable(move.getRow(), move.getCol())) {
+                // TODO: This can never be reached as client-side checks if the player is
+                // attempting to walk into a wall
+                // Remove this?
+
+                Log.debug(() -> "Player at " + move.getRow() + ", " + move.getCol());
+                return 'i';
+            } else {
+                Log.debug(() -> "Player has not collected cheese... ");
+                if (maze.checkForPlayer(move.getPlayerId(), move.getRow(), move.getCol())) {
+                    // Player collision!
+                    Log.debug(() -> "And player collision detected!");
+                    return 'i';
+                }
+
+                Log.debug(() -> "But player has made a valid move!");
+                maze.movePlayer(move.getPlayerId(), move.getRow(), move.getCol());
+
+                return 'v';
+            }
+        } finally {
+            // Call unlock in the event of an exception, and after any call to return
+            movementLock.unlock();
+        }
+    }
+
+    /**
+     * Tells the player that sent a numbered move where it is now that the
+     * move has been processed.
+     *
+     * @return False if the move had no sequence number
+     */
+    private boolean acknowledgeMove(PlayerMove move, int row, int col) {
+        if (move.getSeq() == PlayerMove.NO_SEQ) {
+            return false;
+        }
+        ClientHandler client = clients.get(move.getPlayerId());
+        if (client != null) {
+            client.queue(ackPacket, Protocol.encodeAck(ackPacket, move.getSeq(), row, col));
+        }
+        return true;
+    }
+
+    // Sends a player's position to everyone except excludePlayerId (-1 to send to all)
+    private void broadcastPlayerMove(int playerId, int row, int col, int excludePlayerId) {
+        encodePlayerMove(playerId, row, col);
+        broadcast(scratchPacket, excludePlayerId);
+    }
+
+    // Puts a MOVE in scratchPacket and scratchPacketV2
+    private void encodePlayerMove(int playerId, int row, int col) {
+        Protocol.encodeV1Move(scratchPacket, playerId, row, col);
+        scratchLengthV2 = Protocol.encodeMove(scratchPacketV2, playerId, row, col);
+    }
+
+    private void broadcastCheeseCollection(int playerId, int playerRow, int playerCol, int newCheeseRow,
+            int newCheeseCol) {
+        Log.debug(() -> "Broadcasting new Cheese");
+        Protocol.encodeV1Cheese(scratchPacket, playerId, playerRow, playerCol, newCheeseRow, newCheeseCol);
+        scratchLengthV2 = Protocol.encodeCheese(scratchPacketV2, playerId, playerRow, playerCol, newCheeseRow,
+                newCheeseCol);
+
+        broadcast(scratchPacket, -1); // Send to all players
+    }
+
+    private void broadcastGameWin(int playerId) {
+        Log.info("Room " + roomId + ": player " + playerId + " won, broadcasting game win");
+        Protocol.encodeV1Win(scratchPacket, playerId);
+        scratchLengthV2 = Protocol.encodeWin(scratchPacketV2, playerId);
+
+        broadcast(scratchPacket, -1); // Send to all players
+    }
+
+    // Adds the packet to each client's batch, nothing is written until flushAll()
+    private void broadcast(byte[] packet, int excludePlayerId) {
+        for (ClientHandler client : clients.values()) {
+            if (excludePlayerId == -1 || client.playerId != excludePlayerId) {
+                if (client.getProtocolVersion() == Protocol.V1) {
+                    client.queue(packet);
+                } else {
+                    client.queue(scratchPacketV2, scratchLengthV2);
+                }
+            }
+        }
+    }
+
+    // Hands each client's batch for this cycle to its writer
+    private void flushAll() {
+        for (ClientHandler client : clients.values()) {
+            client.flush();
+        }
+    }
+
+    private boolean isInFog(ClientHandler client) {
+        return fog != null && client.acceptsFog();
+    }
+
+    // Whether cells revealed by playerId are shown to client
+    private boolean seesRevealsOf(ClientHandler client, int playerId) {
+        return ServerConfig.FOG == ServerConfig.FogMode.SHARED || client.getId() == playerId;
+    }
+
+    /**
+     * Sends the cells around a player that has moved to every fog client
+     * that should see them and has not yet.
+     */
+    private void revealAround(int playerId) {
+        if (fog == null) {
+            return;
+        }
+        Player player = maze.getPlayers()[playerId];
+        MazeGrid grid = maze.getGrid();
+        int cheeseCell = grid.index(cheeseCoords[0], cheeseCoords[1]);
+        for (ClientHandler client : clients.values()) {
+            if (!client.acceptsFog() || !seesRevealsOf(client, playerId)) {
+                continue;
+            }
+            int count = fog.reveal(client.getId(), player.getRow(), player.getCol(), revealedCells);
+            if (count > 0) {
+                int length = Protocol.encodeReveal(revealPacket, grid, revealedCells, count, cheeseCell);
+                client.queue(revealPacket, length);
+            }
+        }
+    }
+
+    // The cells around the starting corners and the cell under the cheese, which is always visible
+    private void queueInitialReveal(ClientHandler client) {
+        Player[] players = maze.getPlayers();
+        MazeGrid grid = maze.getGrid();
+        int[] cells = new int[numPlayers * FogOfWar.MAX_REVEALED + 1];
+        int count = 0;
+        for (int playerId = 0; playerId < numPlayers; playerId++) {
+            if (seesRevealsOf(client, playerId)) {
+                int revealed = fog.reveal(client.getId(), players[playerId].getRow(), players[playerId].getCol(),
+                        revealedCells);
+                System.arraycopy(revealedCells, 0, cells, count, revealed);
+                count += revealed;
+            }
+        }
+        int cheeseCell = grid.index(cheeseCoords[0], cheeseCoords[1]);
+        if (fog.revealCell(client.getId(), cheeseCell)) {
+            cells[count++] = cheeseCell;
+        }
+        Arrays.sort(cells, 0, count);
+        byte[] packet = new byte[Protocol.revealPacketSize(count)];
+        client.queue(packet, Protocol.encodeReveal(packet, grid, cells, count, cheeseCell));
+    }
+
+    private void queueMazeChunks(ClientHandler client) {
+        List<byte[]> chunks = client.getProtocolVersion() == Protocol.V2 ? preparedMaze.getMazeChunks()
+                : preparedMaze.getMazeChunks(client.getMazeCodec());
+        for (byte[] chunk : chunks) {
+            client.queue(chunk);
+        }
+    }
+
+    private void broadcastMazeToAllClients() {
+        Log.debug(() -> "started broadcasting maze to clients");
+        MazeGrid grid = maze.getGrid();
+        byte[] mazePacket = preparedMaze.getMazePacket();
+        Player[] players = maze.getPlayers();
+        int[][] positions = new int[numPlayers][];
+        for (int i = 0; i < numPlayers; i++) {
+            positions[i] = new int[] { players[i].getRow(), players[i].getCol() };
+        }
+
+        // Send the maze packet to the clients
+        for (ClientHandler client : clients.values()) {
+            Log.debug(() -> "Sending maze to client: " + client.getId());
+            try {
+                if (client.getProtocolVersion() == Protocol.V1) {
+                    // Player id, start signal and maze go out together
+                    client.queue(new byte[] { (byte) client.getId() });
+                    client.queue(START_SIGNAL);
+                    client.queue(mazePacket);
+                } else {
+                    // The client can draw the board from START, the tiles fill it in chunk by chunk
+                    client.queue(Protocol.encodeStartHeader(client.getId(), grid.getRows(), grid.getCols(),
+                            positions));
+                    if (isInFog(client)) {
+                        // Only what the players can see so far, the rest comes in REVEALs as they move
+                        queueInitialReveal(client);
+                    } else if (ServerConfig.SEND_MAZE_SEEDS && client.acceptsSeedMazes()) {
+                        // The client builds the maze itself and asks for the chunks if its checksum differs
+                        client.queue(preparedMaze.getSeedPacket());
+                    } else {
+                        queueMazeChunks(client);
+                    }
+                }
+                client.flush();
+                Log.debug(() -> "Sent maze to client id: " + client.getId());
+            } catch (Exception e) {
+                Log.error("Failed to send maze to client " + client.playerId, e);
+            }
+        }
+    }
+}
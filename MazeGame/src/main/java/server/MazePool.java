@@ -0,0 +1,89 @@
+package server;
+
+import game.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded stock of PreparedMazes of the configured size. One background
+ * thread generates mazes until the pool is full and then waits for a match
+ * to take one, so starting a match is normally just a queue poll. If the pool
+ * has run dry, or the match needs another size, the maze is built on the
+ * caller's thread like before.
+ */
+final class MazePool {
+    private final BlockingQueue<PreparedMaze> ready;
+    private final int rows;
+    private final int cols;
+    // Every maze gets the next number, which picks its seed (see ServerConfig.seedForMaze)
+    private final AtomicInteger nextMazeNumber = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final LatencyStats generateTime = new LatencyStats("maze-generate");
+
+    /**
+     * @param capacity Most mazes kept ready, 0 turns the pool off
+     */
+    MazePool(int capacity, int rows, int cols) {
+        this.ready = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : null;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    void start() {
+        if (ready == null) {
+            return;
+        }
+        Thread thread = new Thread(this::fillLoop, "maze-pool");
+        thread.setDaemon(true);
+        // Below the transports and match threads, generating ahead of time is never urgent
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+    }
+
+    /**
+     * Hands out a ready maze of the given size, or builds one if there is none.
+     */
+    PreparedMaze take(int rows, int cols) {
+        if (ready != null && rows == this.rows && cols == this.cols) {
+            PreparedMaze maze = ready.poll();
+            if (maze != null) {
+                hits.incrementAndGet();
+                return maze;
+            }
+        }
+        misses.incrementAndGet();
+        return generate(rows, cols);
+    }
+
+    private void fillLoop() {
+        try {
+            while (true) {
+                ready.put(generate(rows, cols));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Log.error("Maze pool stopped, mazes will be built when matches start", e);
+        }
+    }
+
+    private PreparedMaze generate(int rows, int cols) {
+        long seed = ServerConfig.seedForMaze(nextMazeNumber.getAndIncrement());
+        long start = System.nanoTime();
+        PreparedMaze maze = PreparedMaze.prepare(seed, rows, cols);
+        generateTime.record(System.nanoTime() - start);
+        return maze;
+    }
+
+    @Override
+    public String toString() {
+        int available = ready == null ? 0 : ready.size();
+        int capacity = ready == null ? 0 : available + ready.remainingCapacity();
+        return "Maze pool " + rows + "x" + cols + ": " + available + "/" + capacity + " ready, " + hits.get()
+                + " hits, " + misses.get() + " misses. " + generateTime;
+    }
+}
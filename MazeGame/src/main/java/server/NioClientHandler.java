@@ -0,0 +1,231 @@
+package server;
+
+import game.Log;
+import game.MazeCodec;
+import game.PlayerMove;
+import game.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A non-blocking client connection owned by one NioTransport worker. All reads
+ * and writes happen on that worker's selector thread; other threads only
+ * queue packets and ask the worker to flush them.
+ */
+class NioClientHandler extends ClientHandler {
+    private static final int MOVEPACKETSIZE = 3;
+    private static final byte[] AUTH_BYTES = Server.AUTH_BYTES;
+
+    private final SocketChannel channel;
+    private final NioTransport.Worker worker;
+    private SelectionKey key;
+    // Kept so it can still be logged after the channel is closed
+    private final String address;
+
+    // Only touched by the worker thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+    private final byte[] movePacket = new byte[MOVEPACKETSIZE];
+    private boolean authenticated = false;
+
+    // Bytes taken from the outbound queue that the socket has not accepted yet, in read mode
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(256).flip();
+
+    NioClientHandler(SocketChannel channel, NioTransport.Worker worker) {
+        super(-1);
+        this.channel = channel;
+        this.worker = worker;
+        String address;
+        try {
+            address = String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            address = "unknown";
+        }
+        this.address = address;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    /**
+     * Called by the worker when the channel is readable. Decodes as many whole
+     * packets as have arrived and keeps any partial packet for the next read.
+     */
+    void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read == -1) {
+            throw new IOException("Connection closed by client");
+        }
+        markReceived();
+        readBuffer.flip();
+        try {
+            if (!authenticated && !readHandshake()) {
+                return;
+            }
+            if (protocolVersion == Protocol.V1) {
+                readV1Packets();
+            } else {
+                readV2Packets();
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * Checks the auth string, and the version byte in front of it and codec
+     * mask after it if there are any, once enough of them has arrived.
+     *
+     * @return True once the client is authenticated
+     */
+    private boolean readHandshake() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            return false;
+        }
+        int first = readBuffer.get(readBuffer.position());
+        int version = Protocol.isVersionByte(first) ? Protocol.negotiate(first) : Protocol.V1;
+        int handshakeLength = AUTH_BYTES.length + (version >= Protocol.V2 ? 1 : 0)
+                + (version >= Protocol.V3 ? 1 : 0);
+        if (readBuffer.remaining() < handshakeLength) {
+            return false;
+        }
+        if (version >= Protocol.V2) {
+            readBuffer.get();
+        }
+        for (byte expected : AUTH_BYTES) {
+            if (readBuffer.get() != expected) {
+                Log.info(getAddress() + " Client rejected, bad auth");
+                closeNow();
+                return false;
+            }
+        }
+        // Mask of the maze codecs the client can decode, and whether it can rebuild seeded mazes
+        // and play in the fog, and whether it numbers its moves
+        int codecMask = version >= Protocol.V3 ? readBuffer.get() & 0xFF : 0;
+        MazeCodec codec = MazeCodec.choose(codecMask, ServerConfig.MAZE_CODEC);
+        authenticated = true;
+        setProtocolVersion(version);
+        setMazeCodec(codec);
+        setSeedMazes((codecMask & Protocol.SEED_MAZES) != 0);
+        setFog((codecMask & Protocol.FOG) != 0);
+        setSeqMoves((codecMask & Protocol.SEQ_MOVES) != 0);
+        if (version >= Protocol.V3) {
+            send(new byte[] { (byte) version, (byte) codec.id });
+        } else if (version != Protocol.V1) {
+            send(new byte[] { (byte) version });
+        }
+        Server.onNioClientAuthenticated(this);
+        return true;
+    }
+
+    private void readV1Packets() {
+        while (!closed && readBuffer.remaining() >= MOVEPACKETSIZE) {
+            readBuffer.get(movePacket);
+            MatchRoom room = this.room;
+            if (room != null && !isPongPacket(movePacket)) {
+                room.queueMove(processMovePacket(movePacket));
+            }
+        }
+    }
+
+    // Decodes whole packets only, a packet cut off by the read is left for the next one
+    private void readV2Packets() throws IOException {
+        while (!closed && readBuffer.hasRemaining()) {
+            int start = readBuffer.position();
+            byte token = readBuffer.get();
+            if (token == Protocol.PONG) {
+                continue;
+            }
+            if (token == Protocol.MAZE_REQUEST) {
+                MatchRoom room = this.room;
+                if (room != null) {
+                    room.requestMaze(this);
+                }
+                continue;
+            }
+            if (token != Protocol.MOVE) {
+                throw new IOException("Invalid packet token: " + token);
+            }
+            // NO_SEQ and INCOMPLETE are both -1, so only a seq that was read can be incomplete
+            int seq = seqMoves ? Protocol.getVarInt(readBuffer) : PlayerMove.NO_SEQ;
+            int row = seqMoves && seq == Protocol.INCOMPLETE ? Protocol.INCOMPLETE
+                    : Protocol.getVarInt(readBuffer);
+            int col = row == Protocol.INCOMPLETE ? Protocol.INCOMPLETE : Protocol.getVarInt(readBuffer);
+            if (col == Protocol.INCOMPLETE) {
+                readBuffer.position(start);
+                return;
+            }
+            MatchRoom room = this.room;
+            if (room != null) {
+                room.queueMove(new PlayerMove(playerId, row, col, seq));
+            }
+        }
+    }
+
+    /**
+     * Called by the worker when the channel is writable. Writes until the
+     * outbound queue is empty or the socket buffer is full.
+     *
+     * @return True if everything committed has been written
+     */
+    boolean onWritable() throws IOException {
+        while (true) {
+            if (!writeBuffer.hasRemaining()) {
+                writeBuffer.clear();
+                writeBuffer = takeCommitted(writeBuffer);
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining()) {
+                    break;
+                }
+            }
+            channel.write(writeBuffer);
+            if (writeBuffer.hasRemaining()) {
+                return false; // Socket buffer full, wait for the next OP_WRITE
+            }
+        }
+        if (closing) {
+            closeNow();
+        }
+        return true;
+    }
+
+    @Override
+    protected void signalWriter() {
+        worker.requestWrite(this);
+    }
+
+    @Override
+    boolean isClosed() {
+        return super.isClosed() || !channel.isOpen();
+    }
+
+    @Override
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            reportClosed();
+        }
+    }
+
+    @Override
+    String getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,175 @@
+package server;
+
+import game.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking connection engine. One acceptor thread hands new sockets to a
+ * small, fixed set of worker threads, each running its own Selector over
+ * many connections. Thread count no longer grows with the number of sockets.
+ */
+final class NioTransport {
+    private final ServerSocketChannel serverChannel;
+    private final Selector acceptSelector;
+    private final Worker[] workers;
+    private volatile boolean accepting = false;
+    private int nextWorker = 0;
+
+    NioTransport(String host, int port, int numWorkers) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(host, port), 50);
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, 0);
+
+        workers = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    void start() {
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, "nio-worker-" + worker.index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        // Not a daemon, the acceptor is what keeps the server alive in nio mode
+        Thread acceptor = new Thread(this::acceptLoop, "nio-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Turns accepting on or off. While off, new connections wait in the
+     * listen backlog just like they do in stream mode between matches.
+     */
+    void setAccepting(boolean accepting) {
+        this.accepting = accepting;
+        SelectionKey key = serverChannel.keyFor(acceptSelector);
+        key.interestOps(accepting ? SelectionKey.OP_ACCEPT : 0);
+        acceptSelector.wakeup();
+    }
+
+    private void acceptLoop() {
+        try {
+            while (serverChannel.isOpen()) {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+                if (!accepting) {
+                    continue;
+                }
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    Log.info("Incoming connection attempt from " + channel.getRemoteAddress());
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    // Spread connections evenly across the workers
+                    workers[nextWorker].register(channel);
+                    nextWorker = (nextWorker + 1) % workers.length;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A selector thread serving reads and writes for its share of the
+     * connections.
+     */
+    static final class Worker implements Runnable {
+        private final int index;
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<NioClientHandler> pendingWrites = new ConcurrentLinkedQueue<>();
+
+        Worker(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        // Called from any thread when a handler has something new to write
+        void requestWrite(NioClientHandler handler) {
+            pendingWrites.add(handler);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    registerPendingChannels();
+                    flushPendingWrites();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioClientHandler handler = (NioClientHandler) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                handler.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable() && handler.onWritable()) {
+                                key.interestOps(SelectionKey.OP_READ);
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            Log.warn("Client " + handler.getId() + " error: " + e.getMessage());
+                            handler.closeNow();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void registerPendingChannels() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                NioClientHandler handler = new NioClientHandler(channel, this);
+                try {
+                    handler.setKey(channel.register(selector, SelectionKey.OP_READ, handler));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    handler.closeNow();
+                }
+            }
+        }
+
+        // Try writing straight away, and only wait for OP_WRITE if the socket is full
+        private void flushPendingWrites() {
+            NioClientHandler handler;
+            while ((handler = pendingWrites.poll()) != null) {
+                SelectionKey key = handler.getKey();
+                if (key == null || !key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (!handler.onWritable() && key.isValid()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                } catch (IOException e) {
+                    Log.warn("Failed to write to client " + handler.getId() + ": " + e.getMessage());
+                    handler.closeNow();
+                }
+            }
+        }
+    }
+}
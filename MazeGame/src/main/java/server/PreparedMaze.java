@@ -0,0 +1,124 @@
+package server;
+
+import game.Log;
+import game.Maze;
+import game.MazeCodec;
+import game.MazeGenerator;
+import game.Protocol;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A maze that is ready to be played: generated, first cheese placed and
+ * encoded into the packet sent at match start. Everything slow about starting
+ * a match happens in prepare(), so it can be done ahead of time by MazePool.
+ */
+final class PreparedMaze {
+    private final Maze maze;
+    private final int[] cheeseCoords;
+    private final byte[] mazePacket;
+    // MAZE_SEED packet, for clients that can build the maze themselves
+    private final byte[] seedPacket;
+    // MAZE_CHUNK packets, built once per format and shared by every client that uses it
+    private List<byte[]> mazeChunks;
+    private final Map<MazeCodec, List<byte[]>> encodedChunks = new EnumMap<>(MazeCodec.class);
+
+    private PreparedMaze(Maze maze, int[] cheeseCoords, byte[] mazePacket, byte[] seedPacket) {
+        this.maze = maze;
+        this.cheeseCoords = cheeseCoords;
+        this.mazePacket = mazePacket;
+        this.seedPacket = seedPacket;
+    }
+
+    static PreparedMaze prepare(long seed, int rows, int cols) {
+        Maze maze = new Maze(seed, rows, cols, ServerConfig.MAZE_GENERATOR);
+        // Place a cheese
+        int[] cheeseCoords = maze.placeCheeseRandomly();
+        Log.debug(maze::renderMaze);
+        byte[] mazePacket = Protocol.encodeMazeTiles(maze.getGrid(), cheeseCoords);
+        byte[] seedPacket = Protocol.encodeMazeSeed(MazeGenerator.idOf(ServerConfig.MAZE_GENERATOR_NAME), seed,
+                Protocol.mazeChecksum(mazePacket));
+        PreparedMaze prepared = new PreparedMaze(maze, cheeseCoords, mazePacket, seedPacket);
+        // Compressing a big maze takes longer than generating it, so that is done ahead of time too
+        prepared.getMazeChunks(ServerConfig.MAZE_CODEC);
+        return prepared;
+    }
+
+    Maze getMaze() {
+        return maze;
+    }
+
+    int[] getCheeseCoords() {
+        return cheeseCoords;
+    }
+
+    // Shared by every client of the match, who only ever copy it
+    byte[] getMazePacket() {
+        return mazePacket;
+    }
+
+    byte[] getSeedPacket() {
+        return seedPacket;
+    }
+
+    /**
+     * The tiles as protocol v2 MAZE_CHUNK packets of ServerConfig.MAZE_CHUNK_BYTES.
+     */
+    synchronized List<byte[]> getMazeChunks() {
+        if (mazeChunks == null) {
+            int chunkSize = chunkSize(mazePacket);
+            mazeChunks = new ArrayList<>();
+            for (int offset = 0; offset < mazePacket.length; offset += chunkSize) {
+                mazeChunks.add(Protocol.encodeMazeChunk(mazePacket, offset,
+                        Math.min(chunkSize, mazePacket.length - offset)));
+            }
+        }
+        return mazeChunks;
+    }
+
+    /**
+     * The tiles as protocol v3 MAZE_CHUNK packets: the same slices as for v2,
+     * each encoded on its own so the client can draw it when it lands.
+     */
+    synchronized List<byte[]> getMazeChunks(MazeCodec codec) {
+        List<byte[]> chunks = encodedChunks.get(codec);
+        if (chunks == null) {
+            int chunkSize = chunkSize(mazePacket);
+            chunks = new ArrayList<>();
+            long encodedBytes = 0;
+            for (int offset = 0; offset < mazePacket.length; offset += chunkSize) {
+                byte[] chunk = Protocol.encodeMazeChunk(mazePacket, offset,
+                        Math.min(chunkSize, mazePacket.length - offset), codec);
+                chunks.add(chunk);
+                encodedBytes += chunk.length;
+            }
+            encodedChunks.put(codec, chunks);
+            long sent = encodedBytes;
+            int numOfChunks = chunks.size();
+            Log.debug(() -> "Maze of " + mazePacket.length + " bytes is " + sent + " bytes as " + codec + " in "
+                    + numOfChunks + " chunks");
+        }
+        return chunks;
+    }
+
+    /**
+     * Chunks are ServerConfig.MAZE_CHUNK_BYTES, or bigger on boards where they
+     * would take more than half of a client's outbound queue, which has to
+     * keep room for moves.
+     */
+    private static int chunkSize(byte[] tiles) {
+        int maxChunks = Math.max(1, ServerConfig.OUTBOUND_CAPACITY / 2);
+        return Math.max(ServerConfig.MAZE_CHUNK_BYTES, (tiles.length + maxChunks - 1) / maxChunks);
+    }
+
+    int getRows() {
+        return maze.getGrid().getRows();
+    }
+
+    int getCols() {
+        return maze.getGrid().getCols();
+    }
+}
@@ -0,0 +1,101 @@
+package server;
+
+import game.Maze;
+import game.MazeCodec;
+import game.MazeGenerator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Server settings. Everything is read once from system properties so the
+ * server can be tuned without a rebuild, e.g.
+ * java -Dmaze.transport=nio -cp target/classes server.Server
+ */
+final class ServerConfig {
+    // "stream" is the original thread-per-socket transport, "nio" is the selector engine
+    static final String TRANSPORT = System.getProperty("maze.transport", "stream");
+    // Number of selector threads serving sockets in nio mode
+    static final int NIO_THREADS = Math.max(1, Integer.getInteger("maze.nio.threads", 2));
+
+    // Most packets that may wait in one client's outbound queue
+    static final int OUTBOUND_CAPACITY = Math.max(1, Integer.getInteger("maze.outbound.capacity", 256));
+    // What to do when a client's outbound queue is full: "drop-moves" or "disconnect"
+    static final OverflowPolicy OUTBOUND_OVERFLOW = OverflowPolicy
+            .parse(System.getProperty("maze.outbound.overflow", "drop-moves"));
+
+    // How long a client in a match may be quiet before it is pinged
+    static final long HEARTBEAT_INTERVAL_MS = Math.max(10, Long.getLong("maze.heartbeat.ms", 1000));
+    // How long a client may go without sending anything (moves or pongs) before it is dropped
+    static final long HEARTBEAT_TIMEOUT_MS = Math.max(HEARTBEAT_INTERVAL_MS,
+            Long.getLong("maze.heartbeat.timeout.ms", 10000));
+
+    // Most moves from one player that may wait for the game loop, more are dropped
+    static final int INPUT_CAPACITY = Math.max(1, Integer.getInteger("maze.input.capacity", 16));
+    // Moves per second a player may keep sending, and how many may come at once after a pause
+    static final int INPUT_RATE = Math.max(1, Integer.getInteger("maze.input.rate", 30));
+    static final int INPUT_BURST = Math.max(1, Integer.getInteger("maze.input.burst", 15));
+
+    // Length of a game tick in ms. 0 (the default) handles each move as soon as it arrives instead
+    static final long TICK_MS = Math.max(0, Long.getLong("maze.tick.ms", 0));
+
+    // Board size for matches where every player speaks protocol version 2. Version 1 players always get 20x20
+    static final int MAZE_ROWS = Math.max(4, Integer.getInteger("maze.rows", Maze.NUM_OF_ROWS));
+    static final int MAZE_COLS = Math.max(4, Integer.getInteger("maze.cols", Maze.NUM_OF_COLUMNS));
+
+    // Size of the pieces the maze is sent to protocol v2 clients in
+    static final int MAZE_CHUNK_BYTES = Math.max(64, Integer.getInteger("maze.chunk.bytes", 4096));
+
+    // Codec the maze is sent with to protocol v3 clients that can decode it: "raw", "rle" or "deflate"
+    static final MazeCodec MAZE_CODEC = MazeCodec.forName(System.getProperty("maze.codec", "deflate"));
+
+    // "seed" sends clients that can rebuild the maze only its seed, "full" always sends every tile
+    static final boolean SEND_MAZE_SEEDS = !"full".equalsIgnoreCase(System.getProperty("maze.transfer", "seed"));
+
+    // Who sees a cell once a player has been next to it, for clients that can play in the fog: "shared"
+    // (everyone, the rules in the README), "private" (only that player) or "off" (clients get the whole maze)
+    static final FogMode FOG = FogMode.parse(System.getProperty("maze.fog", "shared"));
+
+    // Maze engine: "dfs", "kruskal", "wilson" or "eller", see MazeGenerator
+    static final String MAZE_GENERATOR_NAME = System.getProperty("maze.generator", "dfs");
+    static final MazeGenerator MAZE_GENERATOR = MazeGenerator.forName(MAZE_GENERATOR_NAME);
+
+    // Base seed for mazes and cheese, the Nth maze generated uses MAZE_SEED + N. Unset means a random seed per maze
+    static final Long MAZE_SEED = Long.getLong("maze.seed");
+    // How many mazes are generated ahead of time so matches start without waiting, 0 to build them on demand
+    static final int MAZE_POOL_SIZE = Math.max(0, Integer.getInteger("maze.pool.size", 4));
+
+    enum OverflowPolicy {
+        // Overwrite the newest unsent move for the same player, disconnect if there is none
+        DROP_SUPERSEDED,
+        // Disconnect the client as soon as its queue is full
+        DISCONNECT;
+
+        static OverflowPolicy parse(String value) {
+            return "disconnect".equalsIgnoreCase(value) ? DISCONNECT : DROP_SUPERSEDED;
+        }
+    }
+
+    enum FogMode {
+        OFF,
+        SHARED,
+        PRIVATE;
+
+        static FogMode parse(String value) {
+            if ("off".equalsIgnoreCase(value)) {
+                return OFF;
+            }
+            return "private".equalsIgnoreCase(value) ? PRIVATE : SHARED;
+        }
+    }
+
+    private ServerConfig() {
+    }
+
+    static boolean useNio() {
+        return "nio".equalsIgnoreCase(TRANSPORT);
+    }
+
+    static long seedForMaze(int mazeNumber) {
+        return MAZE_SEED != null ? MAZE_SEED + mazeNumber : ThreadLocalRandom.current().nextLong();
+    }
+}
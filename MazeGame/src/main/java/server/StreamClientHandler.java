@@ -0,0 +1,169 @@
+package server;
+
+import game.Log;
+import game.PlayerMove;
+import game.Protocol;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * The original blocking transport: one thread per socket reading move packets.
+ * Writes are done by a virtual writer thread per client, which drains the
+ * outbound queue so the game loop never waits on a socket.
+ */
+class StreamClientHandler extends ClientHandler {
+    private static final int MOVEPACKETSIZE = 3;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    public StreamClientHandler(int playerId, Socket socket, InputStream in, OutputStream out) {
+        super(playerId);
+        this.socket = socket;
+        // Version 2 packets are read a byte at a time
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+        Thread.ofVirtual().name("client-writer-" + socket.getPort()).start(this::writeLoop);
+    }
+
+    public void handleMessages() throws IOException {
+        byte[] input = new byte[MOVEPACKETSIZE];
+        try {
+            while (!socket.isClosed()) {
+                // Receive move packet from client
+                PlayerMove move = protocolVersion == Protocol.V1 ? readV1Packet(input) : readV2Packet();
+                markReceived();
+                // Reading starts while the client is still in the lobby, so that a disconnect
+                // there is noticed straight away. It has no player id to send moves with yet
+                MatchRoom room = this.room;
+                if (room == null || move == null) {
+                    continue;
+                }
+                Log.debug(() -> "Decoded into player move from player id: " + move.getPlayerId() + ", row: "
+                        + move.getRow() + ", col: " + move.getCol());
+                // Add to the room's BlockingQueue
+                room.queueMove(move);
+            }
+        } catch (IOException e) {
+            Log.info("Client " + playerId + " disconnected: " + e.getMessage());
+            closeNow();
+        } catch (RuntimeException e) {
+            // A packet that does not decode, e.g. a bad token. Closed like the nio transport does
+            Log.warn("Client " + playerId + " error: " + e.getMessage());
+            closeNow();
+        }
+    }
+
+    // Reads one 3-byte packet, returning null for pongs and anything sent before the match
+    private PlayerMove readV1Packet(byte[] input) throws IOException {
+        int bytesRead = 0;
+        while (bytesRead < MOVEPACKETSIZE) {
+            int result = in.read(input, bytesRead, MOVEPACKETSIZE - bytesRead);
+            if (result == -1) {
+                throw new IOException("Issue reading move packets from client");
+            }
+            bytesRead += result;
+        }
+        if (room == null || isPongPacket(input)) {
+            return null;
+        }
+        // Process into a PlayerMove object
+        return processMovePacket(input);
+    }
+
+    // Reads one token and its fields, returning null for anything that is not a move
+    private PlayerMove readV2Packet() throws IOException {
+        int token = in.read();
+        if (token == -1) {
+            throw new IOException("Issue reading move packets from client");
+        }
+        if (token == Protocol.PONG) {
+            return null;
+        }
+        if (token == Protocol.MAZE_REQUEST) {
+            MatchRoom room = this.room;
+            if (room != null) {
+                room.requestMaze(this);
+            }
+            return null;
+        }
+        if (token != Protocol.MOVE) {
+            throw new IOException("Invalid packet token: " + token);
+        }
+        int seq = seqMoves ? Protocol.readVarInt(in) : PlayerMove.NO_SEQ;
+        int row = Protocol.readVarInt(in);
+        int col = Protocol.readVarInt(in);
+        return new PlayerMove(playerId, row, col, seq);
+    }
+
+    // Waits for committed packets and writes each batch with a single write
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        try {
+            while (true) {
+                outboundLock.lock();
+                try {
+                    while (!hasCommitted() && !closing && !closed) {
+                        outboundReady.await();
+                    }
+                } finally {
+                    outboundLock.unlock();
+                }
+                if (closed || (closing && !hasCommitted())) {
+                    break;
+                }
+                buffer.clear();
+                buffer = takeCommitted(buffer);
+                out.write(buffer.array(), 0, buffer.position());
+                out.flush();
+            }
+        } catch (IOException e) {
+            Log.warn("Failed to write to client " + playerId + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeNow();
+        }
+    }
+
+    @Override
+    protected void signalWriter() {
+        outboundLock.lock();
+        try {
+            outboundReady.signalAll();
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    @Override
+    boolean isClosed() {
+        return super.isClosed() || socket.isClosed() || !socket.isConnected();
+    }
+
+    @Override
+    void closeNow() {
+        closed = true;
+        signalWriter();
+        try {
+            if (!socket.isClosed()) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            reportClosed();
+        }
+    }
+
+    @Override
+    String getAddress() {
+        return String.valueOf(socket.getInetAddress());
+    }
+}
@@ -0,0 +1,38 @@
+package server;
+
+/**
+ * Move rate limit for one player. The bucket holds up to burst tokens and
+ * gains ratePerSecond of them every second; each move takes one. A player
+ * holding a key down stays under the limit, a client that sends moves as
+ * fast as it can gets the rate and nothing more.
+ *
+ * Only used by the reader of its client, so it is not thread safe.
+ */
+final class TokenBucket {
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(int ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if there is one.
+     *
+     * @return False if the move is over the limit
+     */
+    boolean tryTake(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+}
@@ -0,0 +1,534 @@
+import game.MazeCodec;
+import game.Protocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless load generator. Starts bot players against a running server,
+ * each on its own virtual thread and speaking protocol v3 like the Client
+ * (numbered moves, any maze codec). A bot heads for the cheese, with a
+ * random step now and then so the bots also bump into walls and each
+ * other, and joins the lobby again as soon as its match is over, so the
+ * server always has matches to start.
+ *
+ * Every move waits for its ACK before the next one, and the time between
+ * the two is the move's round trip. Every few seconds a line with the
+ * moves and matches of the last interval is printed, and at the end the
+ * round trip and time-to-match percentiles and the error counts. The exit
+ * status is 1 if any bot lost its connection, timed out or got a packet it
+ * could not read, so a run can gate a transport change.
+ *
+ * Start a server (java -cp target/classes server.Server), then run with:
+ * java -Dload.bots=1000 -cp target/classes:target/test-classes BotLoadTest
+ *
+ * Settings, all system properties: load.host (127.0.0.1), load.port (42042),
+ * load.bots (400), load.seconds (60), load.ramp.ms (5000, how long it takes
+ * to connect every bot), load.think.ms (100, pause between a bot's moves)
+ * load.random (0.2, chance of a random step) and load.timeout.ms (5000,
+ * longest wait for an ACK).
+ */
+public class BotLoadTest {
+    private static final String HOST = System.getProperty("load.host", "127.0.0.1");
+    private static final int PORT = Integer.getInteger("load.port", 42042);
+    private static final int BOTS = Math.max(1, Integer.getInteger("load.bots", 400));
+    private static final long SECONDS = Math.max(1, Long.getLong("load.seconds", 60));
+    private static final long RAMP_MS = Math.max(0, Long.getLong("load.ramp.ms", 5000));
+    private static final long THINK_MS = Math.max(0, Long.getLong("load.think.ms", 100));
+    private static final double RANDOM_STEPS = Double.parseDouble(System.getProperty("load.random", "0.2"));
+    private static final int TIMEOUT_MS = Math.max(100, Integer.getInteger("load.timeout.ms", 5000));
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final byte[] AUTH = "me key mause".getBytes(StandardCharsets.US_ASCII);
+    // Every codec, numbered moves, and the whole maze rather than its seed or the fog
+    private static final int HANDSHAKE_MASK = MazeCodec.allMask() | Protocol.SEQ_MOVES;
+    private static final int CHEESE_TILE = 0b0110;
+
+    private static long endAt;
+
+    private static final LongAdder connections = new LongAdder();
+    private static final LongAdder matchesStarted = new LongAdder();
+    private static final LongAdder matchesWon = new LongAdder();
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder rejectedMoves = new LongAdder();
+    private static final LongAdder connectErrors = new LongAdder();
+    private static final LongAdder disconnects = new LongAdder();
+    private static final LongAdder timeouts = new LongAdder();
+    private static final LongAdder protocolErrors = new LongAdder();
+    private static final AtomicInteger playing = new AtomicInteger();
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%d bots against %s:%d for %ds, think %dms, ramp up %dms%n", BOTS, HOST, PORT, SECONDS,
+                THINK_MS, RAMP_MS);
+        long start = System.nanoTime();
+        endAt = start + TimeUnit.SECONDS.toNanos(SECONDS);
+        Bot[] bots = new Bot[BOTS];
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < BOTS; i++) {
+            bots[i] = new Bot(i, TimeUnit.MILLISECONDS.toNanos(RAMP_MS * i / BOTS));
+            executor.execute(bots[i]);
+        }
+
+        System.out.printf("%8s %8s %10s %10s %10s %8s%n", "seconds", "playing", "moves/s", "started", "won",
+                "errors");
+        long lastMoves = 0;
+        long lastReport = start;
+        while (System.nanoTime() < endAt) {
+            Thread.sleep(Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.min(REPORT_NANOS, endAt - System.nanoTime()))));
+            long now = System.nanoTime();
+            long totalMoves = moves.sum();
+            System.out.printf("%8.0f %8d %10.0f %10d %10d %8d%n", (now - start) / 1e9, playing.get(),
+                    (totalMoves - lastMoves) * 1e9 / (now - lastReport), matchesStarted.sum(), matchesWon.sum(),
+                    errorCount());
+            lastMoves = totalMoves;
+            lastReport = now;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(2L * TIMEOUT_MS + 1000, TimeUnit.MILLISECONDS)) {
+            System.out.println("Some bots did not stop in time");
+            executor.shutdownNow();
+        }
+
+        Samples roundTrips = new Samples();
+        Samples waits = new Samples();
+        for (Bot bot : bots) {
+            roundTrips.addAll(bot.roundTrips);
+            waits.addAll(bot.matchWaits);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println();
+        System.out.printf("moves: %d (%.0f/s), rejected: %d%n", moves.sum(), moves.sum() / seconds,
+                rejectedMoves.sum());
+        System.out.printf("matches: %d started, %d won, %d connections%n", matchesStarted.sum(), matchesWon.sum(),
+                connections.sum());
+        System.out.println("move round trip: " + roundTrips.describe());
+        System.out.println("time to match: " + waits.describe());
+        System.out.printf("errors: %d connect, %d disconnected, %d timed out, %d bad packets%n", connectErrors.sum(),
+                disconnects.sum(), timeouts.sum(), protocolErrors.sum());
+        System.exit(errorCount() > 0 ? 1 : 0);
+    }
+
+    private static long errorCount() {
+        return connectErrors.sum() + disconnects.sum() + timeouts.sum() + protocolErrors.sum();
+    }
+
+    /**
+     * Latencies in nanoseconds, kept one per sample so the percentiles are
+     * exact. Each bot fills its own, they are merged at the end.
+     */
+    private static final class Samples {
+        private long[] values = new long[64];
+        private int count = 0;
+
+        void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        String describe() {
+            if (count == 0) {
+                return "n=0";
+            }
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            double total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            return String.format("n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                    count, total / count / 1e6, percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), percentile(sorted, 99.9), sorted[count - 1] / 1e6);
+        }
+
+        // In milliseconds
+        private static double percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    // A packet the bot does not expect at this point or cannot decode
+    private static final class ProtocolException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ProtocolException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Bot implements Runnable {
+        private final int botId;
+        private final long startDelayNanos;
+        private final SplittableRandom random;
+        final Samples roundTrips = new Samples();
+        final Samples matchWaits = new Samples();
+
+        private InputStream in;
+        private OutputStream out;
+        private final byte[] packet = new byte[Protocol.MAX_PACKET_SIZE];
+
+        // The current match
+        private int playerId;
+        private int rows;
+        private int cols;
+        private boolean[] open;
+        private int cheeseCell;
+        private int row;
+        private int col;
+        private int nextSeq;
+        // The move waiting for its ACK, -1 if none
+        private int pendingSeq;
+        private int pendingCell;
+        private long pendingSentAt;
+        // Cells from here to the cheese, recomputed when the bot or the cheese is not where it expects
+        private int[] path;
+        private int pathIndex;
+        private int pathFrom;
+        private int pathTo;
+
+        Bot(int botId, long startDelayNanos) {
+            this.botId = botId;
+            this.startDelayNanos = startDelayNanos;
+            this.random = new SplittableRandom(botId);
+        }
+
+        @Override
+        public void run() {
+            try {
+                TimeUnit.NANOSECONDS.sleep(startDelayNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (System.nanoTime() < endAt) {
+                Socket socket = new Socket();
+                try {
+                    try {
+                        socket.setTcpNoDelay(true);
+                        socket.connect(new InetSocketAddress(HOST, PORT), TIMEOUT_MS);
+                    } catch (IOException e) {
+                        connectErrors.increment();
+                        // Do not hammer a server that is not there
+                        Thread.sleep(TIMEOUT_MS / 10);
+                        continue;
+                    }
+                    connections.increment();
+                    socket.setSoTimeout(TIMEOUT_MS);
+                    in = new BufferedInputStream(socket.getInputStream());
+                    out = new BufferedOutputStream(socket.getOutputStream());
+                    playMatch();
+                } catch (SocketTimeoutException e) {
+                    timeouts.increment();
+                    report(e);
+                } catch (ProtocolException e) {
+                    protocolErrors.increment();
+                    report(e);
+                } catch (IOException e) {
+                    disconnects.increment();
+                    report(e);
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        // The first few errors are printed, after that only counted
+        private void report(IOException e) {
+            if (errorCount() <= 10) {
+                System.out.println("Bot " + botId + ": " + e);
+            }
+        }
+
+        /**
+         * Joins the lobby, waits for a match and plays it until someone wins
+         * or the run is over.
+         */
+        private void playMatch() throws IOException, InterruptedException {
+            out.write(Protocol.V3);
+            out.write(AUTH);
+            out.write(HANDSHAKE_MASK);
+            out.flush();
+            if (readByte() != Protocol.V3) {
+                throw new ProtocolException("Server did not agree to protocol v3");
+            }
+            MazeCodec codec = MazeCodec.forId(readByte());
+
+            long joinedAt = System.nanoTime();
+            if (!waitForStart()) {
+                return;
+            }
+            matchWaits.add(System.nanoTime() - joinedAt);
+            matchesStarted.increment();
+            playing.incrementAndGet();
+            try {
+                readStart();
+                readMaze(codec);
+                pendingSeq = -1;
+                path = null;
+                while (System.nanoTime() < endAt) {
+                    if (pendingSeq < 0) {
+                        Thread.sleep(THINK_MS);
+                        sendMove();
+                    }
+                    if (readPacket()) {
+                        matchesWon.increment();
+                        return;
+                    }
+                }
+            } finally {
+                playing.decrementAndGet();
+            }
+        }
+
+        // Answers pings until START, false if the run ends first
+        private boolean waitForStart() throws IOException {
+            while (true) {
+                int token;
+                try {
+                    token = readByte();
+                } catch (SocketTimeoutException e) {
+                    // Not enough bots in the lobby yet
+                    if (System.nanoTime() >= endAt) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (token == Protocol.PING) {
+                    pong();
+                } else if (token == Protocol.START) {
+                    return true;
+                } else {
+                    throw new ProtocolException("Unexpected token " + token + " in the lobby");
+                }
+            }
+        }
+
+        private void readStart() throws IOException {
+            playerId = readVarInt();
+            rows = readVarInt();
+            cols = readVarInt();
+            int players = readVarInt();
+            for (int i = 0; i < players; i++) {
+                int playerRow = readVarInt();
+                int playerCol = readVarInt();
+                if (i == playerId) {
+                    row = playerRow;
+                    col = playerCol;
+                }
+            }
+        }
+
+        // Reads MAZE_CHUNKs until every tile has arrived
+        private void readMaze(MazeCodec codec) throws IOException {
+            byte[] tiles = new byte[Protocol.mazeTileBytes(rows, cols)];
+            int received = 0;
+            while (received < tiles.length) {
+                int token = readByte();
+                if (token == Protocol.PING) {
+                    pong();
+                    continue;
+                }
+                if (token != Protocol.MAZE_CHUNK) {
+                    throw new ProtocolException("Unexpected token " + token + " before the maze was complete");
+                }
+                int offset = readVarInt();
+                int length = readVarInt();
+                byte[] encoded = readBytes(readVarInt());
+                byte[] chunk = new byte[length];
+                codec.decode(encoded, chunk);
+                System.arraycopy(chunk, 0, tiles, offset, length);
+                received += length;
+            }
+            open = new boolean[rows * cols];
+            for (int cell = 0; cell < open.length; cell++) {
+                int tile = cell % 2 == 0 ? (tiles[cell / 2] >> 4) & 0b1111 : tiles[cell / 2] & 0b1111;
+                open[cell] = tile != 0;
+                if (tile == CHEESE_TILE) {
+                    cheeseCell = cell;
+                }
+            }
+        }
+
+        /**
+         * Reads and applies one packet.
+         *
+         * @return True if it was WIN
+         */
+        private boolean readPacket() throws IOException {
+            int token = readByte();
+            switch (token) {
+                case Protocol.PING -> pong();
+                case Protocol.MOVE -> {
+                    // Other players are not tracked, the server rejects moves into them
+                    readVarInt();
+                    readVarInt();
+                    readVarInt();
+                }
+                case Protocol.CHEESE -> {
+                    readVarInt();
+                    readVarInt();
+                    readVarInt();
+                    int cheeseRow = readVarInt();
+                    cheeseCell = cheeseRow * cols + readVarInt();
+                }
+                case Protocol.ACK -> {
+                    int seq = readVarInt();
+                    row = readVarInt();
+                    col = readVarInt();
+                    if (seq == pendingSeq) {
+                        roundTrips.add(System.nanoTime() - pendingSentAt);
+                        moves.increment();
+                        if (row * cols + col != pendingCell) {
+                            rejectedMoves.increment();
+                        }
+                        pendingSeq = -1;
+                    }
+                }
+                case Protocol.WIN -> {
+                    readVarInt();
+                    return true;
+                }
+                default -> throw new ProtocolException("Unexpected token " + token + " during the match");
+            }
+            return false;
+        }
+
+        private void sendMove() throws IOException {
+            int target = nextCell(row * cols + col);
+            pendingSeq = nextSeq++;
+            pendingCell = target;
+            int length = Protocol.encodeMoveRequest(packet, pendingSeq, target / cols, target % cols);
+            pendingSentAt = System.nanoTime();
+            out.write(packet, 0, length);
+            out.flush();
+        }
+
+        private int nextCell(int here) {
+            if (random.nextDouble() >= RANDOM_STEPS) {
+                if (path == null || pathFrom != here || pathTo != cheeseCell || pathIndex >= path.length) {
+                    path = findPath(here, cheeseCell);
+                    pathIndex = 0;
+                    pathTo = cheeseCell;
+                }
+                if (path != null && pathIndex < path.length) {
+                    // Assume it is allowed, the next call recomputes the path if it was not
+                    pathFrom = path[pathIndex];
+                    return path[pathIndex++];
+                }
+            }
+            int[] neighbours = { here - cols, here + cols, here - 1, here + 1 };
+            for (int tries = 0; tries < 8; tries++) {
+                int cell = neighbours[random.nextInt(4)];
+                if (cell >= 0 && cell < open.length && open[cell]) {
+                    return cell;
+                }
+            }
+            return neighbours[random.nextInt(4)];
+        }
+
+        // Breadth first search over open cells, the cells after from up to and including to
+        private int[] findPath(int from, int to) {
+            int[] previous = new int[open.length];
+            Arrays.fill(previous, -1);
+            int[] queue = new int[open.length];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = from;
+            previous[from] = from;
+            while (head < tail && previous[to] < 0) {
+                int cell = queue[head++];
+                int cellRow = cell / cols;
+                int cellCol = cell % cols;
+                if (cellRow > 0) {
+                    tail = visit(cell, cell - cols, previous, queue, tail);
+                }
+                if (cellRow < rows - 1) {
+                    tail = visit(cell, cell + cols, previous, queue, tail);
+                }
+                if (cellCol > 0) {
+                    tail = visit(cell, cell - 1, previous, queue, tail);
+                }
+                if (cellCol < cols - 1) {
+                    tail = visit(cell, cell + 1, previous, queue, tail);
+                }
+            }
+            if (previous[to] < 0) {
+                return null;
+            }
+            int length = 0;
+            for (int cell = to; cell != from; cell = previous[cell]) {
+                length++;
+            }
+            int[] steps = new int[length];
+            for (int cell = to; cell != from; cell = previous[cell]) {
+                steps[--length] = cell;
+            }
+            return steps;
+        }
+
+        private int visit(int from, int cell, int[] previous, int[] queue, int tail) {
+            if (open[cell] && previous[cell] < 0) {
+                previous[cell] = from;
+                queue[tail++] = cell;
+            }
+            return tail;
+        }
+
+        private void pong() throws IOException {
+            out.write(Protocol.PONG);
+            out.flush();
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+            return b;
+        }
+
+        private int readVarInt() throws IOException {
+            return Protocol.readVarInt(in);
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = in.read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new EOFException("Server closed the connection");
+                }
+                read += count;
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import game.GridMazeBuilder;
+import game.MazeBuilder;
+import game.MazeGrid;
+
+import java.util.SplittableRandom;
+
+/**
+ * Times MazeBuilder against GridMazeBuilder for growing maze sizes. The old
+ * builder is only run up to 500x500, past that it takes too long and too much
+ * memory to be worth waiting for.
+ *
+ * Run with: java -cp target/classes:target/test-classes MazeBuilderBenchmark
+ */
+public class MazeBuilderBenchmark {
+    private static final int[] SIZES = { 20, 100, 500, 1000, 2000, 4000 };
+    private static final int OLD_BUILDER_MAX_SIZE = 500;
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        System.out.printf("%-12s %16s %16s%n", "size", "MazeBuilder ms", "GridMazeBuilder ms");
+        for (int size : SIZES) {
+            String oldTime = size <= OLD_BUILDER_MAX_SIZE ? String.format("%.2f", timeOldBuilder(size)) : "-";
+            System.out.printf("%-12s %16s %16.2f%n", size + "x" + size, oldTime, timeGridBuilder(size));
+        }
+    }
+
+    private static double timeOldBuilder(int size) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            new MazeBuilder(size, size, new SplittableRandom(i)).getMaze();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            new MazeBuilder(size, size, new SplittableRandom(i)).getMaze();
+        }
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+    private static double timeGridBuilder(int size) {
+        int openCells = 0;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            openCells += countOpen(GridMazeBuilder.build(size, size, new SplittableRandom(i)));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            openCells += countOpen(GridMazeBuilder.build(size, size, new SplittableRandom(i)));
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / RUNS;
+        // Keeps the JIT from throwing the work away
+        if (openCells == 0) {
+            System.out.println("No open cells?");
+        }
+        return ms;
+    }
+
+    private static int countOpen(MazeGrid grid) {
+        return grid.isPassable(1, 1) ? 1 : 0;
+    }
+}
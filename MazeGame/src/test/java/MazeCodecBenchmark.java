@@ -0,0 +1,114 @@
+import game.MazeCodec;
+import game.MazeGenerator;
+import game.MazeGrid;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Size and speed of each MazeCodec on the tile bytes of generated mazes,
+ * both as one block and cut into chunks the way MatchRoom sends them.
+ * Every encoded maze is decoded again and compared, so a broken codec fails
+ * the run instead of printing a nice ratio.
+ *
+ * Run with: java -cp target/classes:target/test-classes MazeCodecBenchmark [engine] [chunkBytes]
+ */
+public class MazeCodecBenchmark {
+    private static final int[] SIZES = { 21, 101, 501, 1001, 2001 };
+    // Each measurement runs for about this long after warming up
+    private static final long RUN_NANOS = 500_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        MazeGenerator generator = MazeGenerator.forName(args.length > 0 ? args[0] : "dfs");
+        int chunkBytes = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+
+        System.out.printf("%-10s %-8s %-8s %12s %8s %12s %12s%n", "size", "codec", "chunks", "bytes", "ratio",
+                "encode ms", "decode ms");
+        for (int size : SIZES) {
+            byte[] tiles = tileBytes(generator.generate(size, size, new SplittableRandom(size)));
+            for (MazeCodec codec : MazeCodec.values()) {
+                report(size, codec, tiles, tiles.length, "whole");
+                if (tiles.length > chunkBytes) {
+                    report(size, codec, tiles, chunkBytes, String.valueOf(chunkBytes));
+                }
+            }
+        }
+    }
+
+    private static void report(int size, MazeCodec codec, byte[] tiles, int chunkBytes, String label)
+            throws IOException {
+        byte[][] encoded = encode(codec, tiles, chunkBytes);
+        long encodedBytes = 0;
+        for (byte[] chunk : encoded) {
+            encodedBytes += chunk.length;
+        }
+        byte[] decoded = decode(codec, encoded, tiles.length, chunkBytes);
+        if (!Arrays.equals(tiles, decoded)) {
+            throw new AssertionError(codec + " does not decode " + size + "x" + size + " back to the same tiles");
+        }
+
+        double encodeMillis = measure(() -> encode(codec, tiles, chunkBytes));
+        double decodeMillis = measure(() -> decode(codec, encoded, tiles.length, chunkBytes));
+        System.out.printf("%-10s %-8s %-8s %12d %8.2f %12.3f %12.3f%n", size + "x" + size, codec, label,
+                encodedBytes, (double) tiles.length / encodedBytes, encodeMillis, decodeMillis);
+    }
+
+    private static byte[][] encode(MazeCodec codec, byte[] tiles, int chunkBytes) {
+        byte[][] chunks = new byte[(tiles.length + chunkBytes - 1) / chunkBytes][];
+        for (int i = 0; i < chunks.length; i++) {
+            int offset = i * chunkBytes;
+            chunks[i] = codec.encode(tiles, offset, Math.min(chunkBytes, tiles.length - offset));
+        }
+        return chunks;
+    }
+
+    private static byte[] decode(MazeCodec codec, byte[][] chunks, int length, int chunkBytes) throws IOException {
+        byte[] tiles = new byte[length];
+        for (int i = 0; i < chunks.length; i++) {
+            int offset = i * chunkBytes;
+            byte[] chunk = new byte[Math.min(chunkBytes, length - offset)];
+            codec.decode(chunks[i], chunk);
+            System.arraycopy(chunk, 0, tiles, offset, chunk.length);
+        }
+        return tiles;
+    }
+
+    // Average milliseconds per call
+    private static double measure(Task task) throws IOException {
+        long warmupEnd = System.nanoTime() + RUN_NANOS / 3;
+        while (System.nanoTime() < warmupEnd) {
+            task.run();
+        }
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            task.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < RUN_NANOS);
+        return elapsed / 1e6 / runs;
+    }
+
+    // Same packing as the server's PreparedMaze: 4 bits per tile, walls 0, floors 1, the cheese 6
+    private static byte[] tileBytes(MazeGrid grid) {
+        int cols = grid.getCols();
+        int tileCount = grid.getRows() * cols;
+        byte[] tiles = new byte[(tileCount + 1) / 2];
+        int cheese = -1;
+        for (int i = 0; i < tileCount; i++) {
+            int tile = grid.isPassable(i / cols, i % cols) ? 0b0001 : 0b0000;
+            if (tile == 0b0001 && cheese < 0 && i > tileCount / 2) {
+                cheese = i;
+                tile = 0b0110;
+            }
+            tiles[i / 2] |= (byte) (i % 2 == 0 ? tile << 4 : tile);
+        }
+        return tiles;
+    }
+
+    private interface Task {
+        Object run() throws IOException;
+    }
+}
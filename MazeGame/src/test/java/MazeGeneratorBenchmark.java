@@ -0,0 +1,68 @@
+import game.EllerMazeGenerator;
+import game.MazeGenerator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Throughput of each MazeGenerator, in mazes and million cells per second,
+ * plus Eller's row streaming on a board too tall to keep in memory as a
+ * MazeGrid.
+ *
+ * Run with: java -cp target/classes:target/test-classes MazeGeneratorBenchmark [engine...]
+ */
+public class MazeGeneratorBenchmark {
+    private static final String[] ENGINES = { "dfs", "kruskal", "wilson", "eller" };
+    private static final int[] SIZES = { 21, 101, 501, 1001 };
+    // Each size runs for about this long after warming up
+    private static final long RUN_NANOS = 1_000_000_000L;
+    private static final int STREAM_ROWS = 200_001;
+    private static final int STREAM_COLS = 1_001;
+
+    public static void main(String[] args) {
+        String[] engines = args.length > 0 ? args : ENGINES;
+        System.out.printf("%-8s %-10s %12s %12s%n", "engine", "size", "mazes/s", "Mcells/s");
+        for (String engine : engines) {
+            MazeGenerator generator = MazeGenerator.forName(engine);
+            for (int size : SIZES) {
+                double mazesPerSecond = measure(generator, size);
+                System.out.printf("%-8s %-10s %12.1f %12.1f%n", engine, size + "x" + size, mazesPerSecond,
+                        mazesPerSecond * size * size / 1e6);
+            }
+        }
+        benchmarkEllerStream();
+    }
+
+    private static double measure(MazeGenerator generator, int size) {
+        SplittableRandom random = new SplittableRandom(1);
+        // Warm up for a third of the run
+        long warmupEnd = System.nanoTime() + RUN_NANOS / 3;
+        while (System.nanoTime() < warmupEnd) {
+            generator.generate(size, size, random.split());
+        }
+        int mazes = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            generator.generate(size, size, random.split());
+            mazes++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < RUN_NANOS);
+        return mazes / (elapsed / 1e9);
+    }
+
+    private static void benchmarkEllerStream() {
+        long[] openCells = new long[1];
+        long start = System.nanoTime();
+        EllerMazeGenerator.stream(STREAM_ROWS, STREAM_COLS, new SplittableRandom(1), (row, passable) -> {
+            for (boolean open : passable) {
+                if (open) {
+                    openCells[0]++;
+                }
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double cells = (double) STREAM_ROWS * STREAM_COLS;
+        System.out.printf("eller stream %dx%d: %.2f s, %.1f Mcells/s, %d open cells%n", STREAM_ROWS, STREAM_COLS,
+                seconds, cells / seconds / 1e6, openCells[0]);
+    }
+}
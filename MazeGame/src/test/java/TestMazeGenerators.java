@@ -0,0 +1,99 @@
+import game.EllerMazeGenerator;
+import game.MazeGenerator;
+import game.MazeGrid;
+
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+
+/**
+ * Checks every MazeGenerator against the guarantees the game relies on: no
+ * 2x2 open squares, no 2x2 wall blocks inside the border, and every open cell
+ * reachable from the top left player. Also checks that streaming an Eller
+ * maze gives the same rows as building it.
+ */
+public class TestMazeGenerators {
+    private static final String[] ENGINES = { "dfs", "kruskal", "wilson", "eller" };
+    private static final int[][] SIZES = { { 5, 5 }, { 6, 6 }, { 5, 7 }, { 20, 20 }, { 21, 21 }, { 31, 57 }, { 100, 41 } };
+    private static final int SEEDS = 20;
+
+    public static void main(String[] args) {
+        for (String engine : ENGINES) {
+            MazeGenerator generator = MazeGenerator.forName(engine);
+            for (int[] size : SIZES) {
+                for (long seed = 0; seed < SEEDS; seed++) {
+                    MazeGrid grid = generator.generate(size[0], size[1], new SplittableRandom(seed));
+                    String name = engine + " " + size[0] + "x" + size[1] + " seed " + seed;
+                    checkNoOpenSquares(grid, name);
+                    checkNoWallBlocks(grid, name);
+                    checkConnected(grid, name);
+                }
+            }
+            System.out.println(engine + ": ok");
+        }
+        checkEllerStreamMatchesBuild();
+        System.out.println("eller stream: ok");
+    }
+
+    private static void checkNoOpenSquares(MazeGrid grid, String name) {
+        for (int row = 0; row < grid.getRows() - 1; row++) {
+            for (int col = 0; col < grid.getCols() - 1; col++) {
+                if (grid.isPassable(row, col) && grid.isPassable(row + 1, col) && grid.isPassable(row, col + 1)
+                        && grid.isPassable(row + 1, col + 1)) {
+                    throw new IllegalStateException(name + ": 2x2 open square at " + row + ", " + col);
+                }
+            }
+        }
+    }
+
+    private static void checkNoWallBlocks(MazeGrid grid, String name) {
+        for (int row = 1; row < grid.getRows() - 2; row++) {
+            for (int col = 1; col < grid.getCols() - 2; col++) {
+                if (!grid.isPassable(row, col) && !grid.isPassable(row + 1, col) && !grid.isPassable(row, col + 1)
+                        && !grid.isPassable(row + 1, col + 1)) {
+                    throw new IllegalStateException(name + ": 2x2 wall block at " + row + ", " + col);
+                }
+            }
+        }
+    }
+
+    // The bottom right corner is off the lattice on even sized boards, the game opens the cells around it
+    private static void checkConnected(MazeGrid grid, String name) {
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        boolean[] seen = new boolean[rows * cols];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        seen[grid.index(1, 1)] = true;
+        queue.add(grid.index(1, 1));
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            int row = cell / cols;
+            int col = cell % cols;
+            int[][] neighbours = { { row - 1, col }, { row + 1, col }, { row, col - 1 }, { row, col + 1 } };
+            for (int[] n : neighbours) {
+                if (grid.inBounds(n[0], n[1]) && grid.isPassable(n[0], n[1]) && !seen[grid.index(n[0], n[1])]) {
+                    seen[grid.index(n[0], n[1])] = true;
+                    queue.add(grid.index(n[0], n[1]));
+                }
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                boolean corner = row == rows - 2 && col == cols - 2;
+                if (grid.isPassable(row, col) && !seen[grid.index(row, col)] && !corner) {
+                    throw new IllegalStateException(name + ": open cell " + row + ", " + col + " is unreachable");
+                }
+            }
+        }
+    }
+
+    private static void checkEllerStreamMatchesBuild() {
+        MazeGrid built = EllerMazeGenerator.build(61, 83, new SplittableRandom(7));
+        EllerMazeGenerator.stream(61, 83, new SplittableRandom(7), (row, passable) -> {
+            for (int col = 0; col < passable.length; col++) {
+                if (passable[col] != built.isPassable(row, col)) {
+                    throw new IllegalStateException("eller stream differs from build at " + row + ", " + col);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,52 @@
+import game.Maze;
+import game.PendingMoves;
+
+import java.util.Arrays;
+
+/**
+ * Checks that PendingMoves replays the moves the server has not processed
+ * yet on top of each ACK, skipping the ones the server will reject too.
+ * Player 0 starts in the top left corner, where (1, 2) and (2, 1) are always
+ * open and (0, 0) is border wall.
+ */
+public class TestPendingMoves {
+    public static void main(String[] args) {
+        Maze maze = new Maze(1);
+        PendingMoves pending = new PendingMoves();
+
+        // Right, then into the border, then down from the start
+        int right = pending.add(1, 2);
+        int wall = pending.add(0, 0);
+        int down = pending.add(2, 1);
+
+        // The server allowed the first move, the other two are still in flight
+        check(pending.acknowledge(right, 1, 2, maze, 0), 2, 1, "replay after first ACK");
+        check(pending.size(), 2, "moves in flight after first ACK");
+
+        // It rejected the wall, and down still replays from where it says the player is
+        check(pending.acknowledge(wall, 1, 2, maze, 0), 2, 1, "replay after rejected move");
+
+        // Down was rejected too (say someone stood there), nothing is left to replay
+        check(pending.acknowledge(down, 1, 2, maze, 0), 1, 2, "position after last ACK");
+        check(pending.size(), 0, "moves in flight after last ACK");
+
+        // An ACK for moves that are already gone changes nothing
+        int next = pending.add(2, 1);
+        check(pending.acknowledge(down, 1, 2, maze, 0), 2, 1, "stale ACK");
+        check(pending.acknowledge(next, 2, 1, maze, 0), 2, 1, "ACK of the new move");
+        System.out.println("pending moves: ok");
+    }
+
+    private static void check(int[] position, int row, int col, String what) {
+        if (position[0] != row || position[1] != col) {
+            throw new AssertionError(what + ": expected [" + row + ", " + col + "] but was "
+                    + Arrays.toString(position));
+        }
+    }
+
+    private static void check(int actual, int expected, String what) {
+        if (actual != expected) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+}
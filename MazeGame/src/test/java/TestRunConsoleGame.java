@@ -23,6 +23,7 @@ public class TestRunConsoleGame {
             int col = input.nextInt();
 
             maze.processPlayerMove(id, row, col);
+            maze.printMaze();
 
 
             // key inputs